@@ -0,0 +1,90 @@
+package xerca.xercamusic.client;
+
+import com.google.common.collect.Maps;
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.api.distmarker.OnlyIn;
+import net.minecraftforge.client.event.ClientPlayerNetworkEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import xerca.xercamusic.common.MusicPages;
+import xerca.xercamusic.common.XercaMusic;
+import xerca.xercamusic.common.packets.MusicPageRequestPacket;
+
+import javax.annotation.Nullable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Music sheet pages the client got from the server. A page is asked for the first time it is needed in a version
+ * that isn't here yet, and the least recently used pages are forgotten.
+ */
+@OnlyIn(Dist.CLIENT)
+@Mod.EventBusSubscriber(modid = XercaMusic.MODID, value = Dist.CLIENT)
+public class ClientMusicPages {
+    private static final int MAX_PAGES = 256;
+
+    private static final LinkedHashMap<String, Page> pages = new LinkedHashMap<>(64, 0.75f, true);
+    // Versions that were asked for and haven't arrived yet
+    private static final Map<String, Integer> requests = Maps.newHashMap();
+
+    /**
+     * @return the notes of the page of a sheet, or null if they are not here yet
+     */
+    @Nullable
+    public static byte[] getPage(CompoundNBT tag, int page) {
+        UUID id = MusicPages.getId(tag);
+        if(id == null || page < 0 || page >= MusicPages.MAX_PAGES){
+            return null;
+        }
+        return getPage(id, page, MusicPages.getVersion(tag, page));
+    }
+
+    @Nullable
+    public static byte[] getPage(UUID id, int page, int version) {
+        String key = getKey(id, page);
+        Page cached = pages.get(key);
+        if(cached != null && cached.version >= version){
+            return cached.music;
+        }
+        Integer requested = requests.get(key);
+        if(requested == null || requested < version){
+            requests.put(key, version);
+            XercaMusic.NETWORK_HANDLER.sendToServer(new MusicPageRequestPacket(id, page));
+        }
+        return null;
+    }
+
+    public static void put(UUID id, int page, int version, byte[] music) {
+        String key = getKey(id, page);
+        Integer requested = requests.get(key);
+        if(requested != null && requested <= version){
+            requests.remove(key);
+        }
+        pages.put(key, new Page(version, music));
+        if(pages.size() > MAX_PAGES){
+            pages.remove(pages.keySet().iterator().next());
+        }
+    }
+
+    private static String getKey(UUID id, int page) {
+        return id + "/" + page;
+    }
+
+    @SubscribeEvent
+    public static void onLoggedOut(ClientPlayerNetworkEvent.LoggedOutEvent event) {
+        pages.clear();
+        requests.clear();
+    }
+
+    private static class Page {
+        private final int version;
+        private final byte[] music;
+
+        private Page(int version, byte[] music) {
+            this.version = version;
+            this.music = music;
+        }
+    }
+}
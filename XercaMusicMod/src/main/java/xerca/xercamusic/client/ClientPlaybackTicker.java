@@ -0,0 +1,29 @@
+package xerca.xercamusic.client;
+
+import net.minecraft.client.Minecraft;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.api.distmarker.OnlyIn;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import xerca.xercamusic.common.MusicPlaybackScheduler;
+import xerca.xercamusic.common.XercaMusic;
+
+/**
+ * Ticks the playback scheduler of the client world from the client tick, so nothing is played while the game is paused.
+ * The world tick handler of the scheduler only ticks server worlds, so the client world isn't ticked twice.
+ */
+@OnlyIn(Dist.CLIENT)
+@Mod.EventBusSubscriber(modid = XercaMusic.MODID, value = Dist.CLIENT)
+public class ClientPlaybackTicker {
+    @SubscribeEvent
+    public static void onClientTick(TickEvent.ClientTickEvent event) {
+        if(event.phase != TickEvent.Phase.END){
+            return;
+        }
+        Minecraft minecraft = Minecraft.getInstance();
+        if(minecraft.world != null && !minecraft.isGamePaused()){
+            MusicPlaybackScheduler.tick(minecraft.world);
+        }
+    }
+}
@@ -3,6 +3,7 @@ package xerca.xercamusic.client;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.entity.player.ClientPlayerEntity;
 import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.CompoundNBT;
 import net.minecraft.util.SoundCategory;
 import net.minecraft.util.SoundEvent;
 import net.minecraft.util.text.TranslationTextComponent;
@@ -47,15 +48,33 @@ public class ClientProxy implements Proxy {
     }
 
     @Override
-    public NoteSound playNote(SoundEvent event, double x, double y, double z) {
-        return playNote(event, x, y, z, SoundCategory.PLAYERS, 3.5f, 1.0f);
+    public void playNote(SoundEvent event, double x, double y, double z, Object source, boolean cutOff) {
+        playNote(event, x, y, z, SoundCategory.PLAYERS, 3.5f, 1.0f, source, cutOff);
     }
 
     @Override
-    public NoteSound playNote(SoundEvent event, double x, double y, double z, SoundCategory category, float volume, float pitch) {
-        NoteSound sound = new NoteSound(event, category, (float)x, (float)y, (float)z, volume, pitch);
-        Minecraft.getInstance().getSoundHandler().play(sound);
-        return sound;
+    public void playNote(SoundEvent event, double x, double y, double z, SoundCategory category, float volume, float pitch) {
+        playNote(event, x, y, z, category, volume, pitch, null, false);
+    }
+
+    @Override
+    public void playNote(SoundEvent event, double x, double y, double z, SoundCategory category, float volume, float pitch, Object source, boolean cutOff) {
+        VoicePool.play(event, x, y, z, category, volume, pitch, source, cutOff);
+    }
+
+    @Override
+    public void scheduleNote(double tick, Runnable note) {
+        NoteClock.schedule(tick, note);
+    }
+
+    @Override
+    public void preloadInstrument(ItemInstrument instrument) {
+        InstrumentSamples.preload(instrument);
+    }
+
+    @Override
+    public byte[] getMusicPage(CompoundNBT sheet, int page) {
+        return ClientMusicPages.getPage(sheet, page);
     }
 
     @Override
@@ -36,7 +36,6 @@ public class GuiInstrument extends Screen {
 
     private final PlayerEntity player;
     private final ItemInstrument instrument;
-    private NoteSound lastPlayed = null;
 
     GuiInstrument(PlayerEntity player, ItemInstrument instrument, ITextComponent title) {
         super(title);
@@ -53,6 +52,7 @@ public class GuiInstrument extends Screen {
     public void init() {
         guiBaseX = (this.width - guiWidth) / 2;
         guiBaseY = (this.height - guiHeight) / 2;
+        XercaMusic.proxy.preloadInstrument(instrument);
     }
 
     @Override
@@ -111,12 +111,8 @@ public class GuiInstrument extends Screen {
     }
 
     private void playSound(int note){
-        if(instrument.shouldCutOff && lastPlayed != null){
-            lastPlayed.stopSound();
-        }
-
         SoundEvent noteSound = instrument.getSound(note);
-        lastPlayed = XercaMusic.proxy.playNote(noteSound, player.getPosX(), player.getPosY(), player.getPosZ());
+        XercaMusic.proxy.playNote(noteSound, player.getPosX(), player.getPosY(), player.getPosZ(), this, instrument.shouldCutOff);
         player.world.addParticle(ParticleTypes.NOTE, player.getPosX() + 0.5D, player.getPosY() + 2.2D, player.getPosZ() + 0.5D, note / 24.0D, 0.0D, 0.0D);
 
         SingleNotePacket pack = new SingleNotePacket(note, instrument);
@@ -5,6 +5,7 @@ import com.mojang.blaze3d.platform.GlStateManager;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.gui.screen.Screen;
 import net.minecraft.client.gui.widget.button.Button;
+import net.minecraft.client.gui.widget.button.ChangePageButton;
 import net.minecraft.client.resources.I18n;
 import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.item.Item;
@@ -18,6 +19,8 @@ import net.minecraftforge.api.distmarker.Dist;
 import net.minecraftforge.api.distmarker.OnlyIn;
 import org.apache.commons.lang3.ArrayUtils;
 import org.lwjgl.glfw.GLFW;
+import xerca.xercamusic.common.MusicCodec;
+import xerca.xercamusic.common.MusicPages;
 import xerca.xercamusic.common.SoundEvents;
 import xerca.xercamusic.common.XercaMusic;
 import xerca.xercamusic.common.item.ItemInstrument;
@@ -28,6 +31,8 @@ import xerca.xercamusic.common.packets.MusicUpdatePacket;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @OnlyIn(Dist.CLIENT)
 public class GuiMusicSheet extends Screen {
@@ -36,7 +41,8 @@ public class GuiMusicSheet extends Screen {
     private final PlayerEntity editingPlayer;
     public final static int beatsInTab = 48;
     public final static int tabAmount = 5;
-    private final static int totalBeats = beatsInTab * tabAmount;
+    private final static int pageBeats = beatsInTab * tabAmount;
+    private final static int totalBeats = MusicPages.MAX_LENGTH;
     private final static int noteImageWidth = 180;
     private final static int noteImageHeight = 241;
     private final static int tabHeight = 39;
@@ -74,13 +80,20 @@ public class GuiMusicSheet extends Screen {
     private ChangeableImageButton buttonPreview;
     private ChangeableImageButton buttonHideNeighbors;
     private LockImageButton buttonLockPrevIns;
-    private NoteSound lastPlayed = null;
+    private ChangePageButton buttonPreviousPage;
+    private ChangePageButton buttonNextPage;
     private boolean neighborsHidden = false;
     private boolean prevInsLocked = false;
     private boolean selfSigned = false;
 
     private byte[] music;
+    // The notes as they are on the server, to find the pages that were changed
+    private byte[] savedMusic;
+    private SheetPages sheetPages;
+    private final NoteGridCache noteGrid = new NoteGridCache();
+    private int page = 0;
     private int length;
+    private MusicEditor editor;
     private int bpm;
     private byte pause;
     private boolean dirty = false;
@@ -88,8 +101,14 @@ public class GuiMusicSheet extends Screen {
     private String authorName = null;
 
     private ArrayList<byte[]> neighborMusics = new ArrayList<>();
+    private ArrayList<SheetPages> neighborPages = new ArrayList<>();
     private ArrayList<Integer> neighborPrevInstruments = new ArrayList<>();
-    private ArrayList<NoteSound> neighborLastPlayeds = new ArrayList<>();
+
+    // Pre-mixed preview, played instead of single notes once the mix is ready
+    private int previewFrom;
+    private String previewMixKey = null;
+    private CompletableFuture<PreviewMixer.Mix> previewMix = null;
+    private PreviewSound previewSound = null;
 
     private static class Note {
         private int tab;
@@ -102,7 +121,7 @@ public class GuiMusicSheet extends Screen {
         Note(int time, int pitch) {
             this.time = time;
             this.pitch = pitch;
-            this.tab = time / beatsInTab;
+            this.tab = (time % pageBeats) / beatsInTab;
         }
 
         int getNoteX() {
@@ -113,16 +132,16 @@ public class GuiMusicSheet extends Screen {
             return pitch;
         }
 
-        void setNoteCoords(int pixelX, int pixelY) {
+        void setNoteCoords(int pixelX, int pixelY, int page) {
             int noteX = (pixelX - startingX) / 3;
             tab = (pixelY - startingY) / tabHeight;
-            time = noteX + tab * beatsInTab;
+            time = page * pageBeats + noteX + tab * beatsInTab;
             pitch = 12 - (pixelY - startingY - tab * tabHeight) / 3;
             //System.out.println("time: "+time+" pitch: "+pitch+" tab: "+tab);
         }
 
         int getPixelX(int imageX) {
-            return imageX + (time - tab * beatsInTab) * 3 + startingX;
+            return imageX + (time % beatsInTab) * 3 + startingX;
         }
 
         int getPixelY(int imageY) {
@@ -142,9 +161,10 @@ public class GuiMusicSheet extends Screen {
     GuiMusicSheet(PlayerEntity player, CompoundNBT noteTag, ITextComponent title) {
         super(title);
         this.editingPlayer = player;
-        if (noteTag != null && !noteTag.isEmpty() && noteTag.contains("music")) {
-            byte[] nbtMusic = noteTag.getByteArray("music");
-            this.length = noteTag.getInt("length");
+        this.music = new byte[totalBeats];
+        this.savedMusic = new byte[totalBeats];
+        if (noteTag != null && !noteTag.isEmpty()) {
+            this.length = Math.min(noteTag.getInt("length"), totalBeats);
             this.pause = noteTag.getByte("pause");
             if(pause <= 0 || pause > 20){
                 pause = 5;
@@ -160,17 +180,13 @@ public class GuiMusicSheet extends Screen {
             if(this.authorName.equals(player.getName().getString())){
                 this.selfSigned = true;
             }
-
-            this.music =  Arrays.copyOfRange(nbtMusic, 0, totalBeats);
         } else {
             this.isSigned = false;
-        }
-
-        if (this.music == null) {
-            this.music = new byte[totalBeats];
             this.length = 0;
             this.pause = 5;
         }
+        this.sheetPages = new SheetPages(noteTag, music, savedMusic);
+        this.editor = new MusicEditor(music, length);
         this.bpm = 1200 / pause;
         this.updateCount = 0;
 
@@ -203,9 +219,10 @@ public class GuiMusicSheet extends Screen {
         if(!neighbor.isEmpty() && neighbor.getItem() instanceof ItemMusicSheet){
             int neighbor_pause = ItemMusicSheet.getPause(neighbor);
             if(neighbor_pause == pause){
-                neighborMusics.add(ItemMusicSheet.getMusic(neighbor));
+                byte[] neighborMusic = new byte[totalBeats];
+                neighborMusics.add(neighborMusic);
+                neighborPages.add(new SheetPages(neighbor.getTag(), neighborMusic, null));
                 neighborPrevInstruments.add(ItemMusicSheet.getPrevInstrument(neighbor));
-                neighborLastPlayeds.add(null);
                 return true;
             }
         }
@@ -295,6 +312,7 @@ public class GuiMusicSheet extends Screen {
 
         this.buttonHideNeighbors = this.addButton(new ChangeableImageButton( noteImageX + 87, 23, 16, 16, 224, 32, 16, noteGuiTextures, button -> {
             neighborsHidden = !neighborsHidden;
+            noteGrid.invalidate();
             if(neighborsHidden){
                 this.buttonHideNeighbors.setTexStarts(240,32);
             }else{
@@ -313,6 +331,8 @@ public class GuiMusicSheet extends Screen {
                 }
             }
         }));
+        this.buttonPreviousPage = this.addButton(new ChangePageButton(noteImageX + noteImageWidth + 4, 100, false, button -> setPage(page - 1), true));
+        this.buttonNextPage = this.addButton(new ChangePageButton(noteImageX + noteImageWidth + 30, 100, true, button -> setPage(page + 1), true));
         updateButtons();
     }
 
@@ -329,6 +349,31 @@ public class GuiMusicSheet extends Screen {
         this.buttonLockPrevIns.active = !this.isSigned;
 
         this.buttonHideNeighbors.visible = this.neighborMusics.size() > 0;
+        this.buttonPreviousPage.visible = this.buttonNextPage.visible = !this.gettingSigned;
+        this.buttonPreviousPage.active = page > 0;
+        this.buttonNextPage.active = page < MusicPages.MAX_PAGES - 1;
+    }
+
+    private void setPage(int newPage) {
+        newPage = Math.max(0, Math.min(newPage, MusicPages.MAX_PAGES - 1));
+        if (newPage != page) {
+            editCursor = editCursorEnd = newPage * pageBeats + editCursor % pageBeats;
+            page = newPage;
+            noteGrid.invalidate();
+            updateButtons();
+        }
+    }
+
+    private void followCursor(int cursor) {
+        if (cursor >= 0 && cursor / pageBeats != page) {
+            page = Math.min(cursor / pageBeats, MusicPages.MAX_PAGES - 1);
+            noteGrid.invalidate();
+            updateButtons();
+        }
+    }
+
+    private boolean isOnPage(int beat) {
+        return beat >= page * pageBeats && beat < (page + 1) * pageBeats;
     }
 
     /**
@@ -338,14 +383,27 @@ public class GuiMusicSheet extends Screen {
     public void tick() {
         super.tick();
         ++this.updateCount;
+        if (sheetPages.update()) {
+            noteGrid.invalidate();
+        }
+        for (SheetPages neighbor : neighborPages) {
+            if (neighbor.update()) {
+                noteGrid.invalidate();
+            }
+        }
         if (previewing) {
             if (updateCount % this.pause == 0) {
                 previewStarted = true;
                 if (previewCursor >= length ||(editCursorEnd != editCursor && previewCursor > editCursorEnd)) {
+                    // The last notes of the mix are left to ring out
+                    previewSound = null;
                     stopPreview();
                     return;
                 }
-                playPrevSound();
+                if (!updatePreviewMix()) {
+                    playPrevSound();
+                }
+                followCursor(previewCursor);
                 previewCursor++;
             }
         }
@@ -357,27 +415,71 @@ public class GuiMusicSheet extends Screen {
 
     private void playSound(int note, int previewInstrument, int neighborId){
         SoundEvent noteSound;
+        boolean cutOff = false;
         if(previewInstrument >= 0 && previewInstrument < Items.instruments.length){
             ItemInstrument ins = Items.instruments[previewInstrument];
             noteSound = ins.getSound(note);
+            cutOff = ins.shouldCutOff;
+        }else{
+            noteSound = SoundEvents.harp_mcs[note];
+        }
+        // Each neighbor sheet cuts off its own notes
+        Object source = neighborId >= 0 && neighborId < neighborMusics.size() ? neighborMusics.get(neighborId) : this;
+        XercaMusic.proxy.playNote(noteSound, editingPlayer.getPosX(), editingPlayer.getPosY(), editingPlayer.getPosZ(), source, cutOff);
+    }
 
-            if(ins.shouldCutOff){
-                if(neighborId >= 0 && neighborId < neighborLastPlayeds.size() && neighborLastPlayeds.get(neighborId) != null){
-                    neighborLastPlayeds.get(neighborId).stopSound();
-                }
-                else if(lastPlayed != null){
-                    lastPlayed.stopSound();
+    private List<PreviewMixer.Track> getPreviewTracks() {
+        int end = editCursorEnd != editCursor ? Math.min(length, editCursorEnd + 1) : length;
+        List<PreviewMixer.Track> tracks = new ArrayList<>();
+        tracks.add(getPreviewTrack(music, end, previewInstrument));
+        if(!neighborsHidden){
+            for(int i = 0; i < neighborMusics.size(); i++){
+                if(neighborMusics.get(i) != null){
+                    tracks.add(getPreviewTrack(neighborMusics.get(i), end, neighborPrevInstruments.get(i)));
                 }
             }
-        }else{
-            noteSound = SoundEvents.harp_mcs[note];
         }
-        NoteSound sound = XercaMusic.proxy.playNote(noteSound, editingPlayer.getPosX(), editingPlayer.getPosY(), editingPlayer.getPosZ());
+        return tracks;
+    }
 
-        if(neighborId >= 0 && neighborId < neighborLastPlayeds.size()){
-            neighborLastPlayeds.set(neighborId, sound);
-        }else{
-            lastPlayed = sound;
+    // Only the notes from where the preview started until where it ends are heard
+    private PreviewMixer.Track getPreviewTrack(byte[] m, int end, int instrument) {
+        end = Math.min(end, m.length);
+        byte[] notes = new byte[Math.max(end, 0)];
+        if(previewFrom < end){
+            System.arraycopy(m, previewFrom, notes, previewFrom, end - previewFrom);
+        }
+        return new PreviewMixer.Track(notes, notes.length, instrument);
+    }
+
+    /**
+     * Plays the pre-mixed preview from the current beat if its mix is ready and still matches the sheets.
+     * @return false if the notes of this beat have to be played one by one
+     */
+    private boolean updatePreviewMix() {
+        List<PreviewMixer.Track> tracks = getPreviewTracks();
+        String key = PreviewMixer.getKey(tracks, pause);
+        if(!key.equals(previewMixKey)){
+            // The sheets were edited, the old mix doesn't match them anymore
+            stopPreviewSound();
+            previewMixKey = key;
+            previewMix = PreviewMixer.getMix(tracks, pause);
+        }
+        if(previewSound != null){
+            return true;
+        }
+        if(previewMix != null && previewMix.isDone() && !previewMix.isCompletedExceptionally()){
+            previewSound = new PreviewSound(previewMix.join().open(previewCursor));
+            Minecraft.getInstance().getSoundHandler().play(previewSound);
+            return true;
+        }
+        return false;
+    }
+
+    private void stopPreviewSound() {
+        if(previewSound != null){
+            previewSound.stop();
+            previewSound = null;
         }
     }
 
@@ -424,12 +526,51 @@ public class GuiMusicSheet extends Screen {
     }
 
     private void drawCursor(MatrixStack matrixStack, int cursorX, int color){
+        if (!isOnPage(cursorX)) {
+            return;
+        }
         Note note = new Note(cursorX, 11);
         int x = note.getPixelX(noteImageX);
         int y = note.getPixelY(noteImageY);
         fill(matrixStack, x + 1, y, x + 2, y + 36, color);
     }
 
+    private void drawSelection(MatrixStack matrixStack) {
+        drawCursor(matrixStack, editCursor, 0xFFAA2222);
+
+        if(editCursor != editCursorEnd){
+            drawCursor(matrixStack, editCursorEnd, 0xFFAA2222);
+
+            // Render selection rectangle, the part of it on this page
+            int begin = Math.max(editCursor, page * pageBeats);
+            int end = Math.min(editCursorEnd, (page + 1) * pageBeats - 1);
+            if(begin > end){
+                return;
+            }
+            int selectionColor = 0x882222AA;
+            Note beginNote = new Note(begin, 11);
+            Note endNote = new Note(end, 11);
+            int x1 = beginNote.getPixelX(noteImageX);
+            int y1 = beginNote.getPixelY(noteImageY);
+            int x2 = endNote.getPixelX(noteImageX);
+            int y2 = endNote.getPixelY(noteImageY);
+
+            if(y1 == y2){
+                fill(matrixStack, x1 + 1, y1, x2 + 2, y1 + 36, selectionColor);
+            }
+            else{
+                int x_end = new Note(beatsInTab-1, 11).getPixelX(noteImageX);
+                int x_begin = new Note(0, 11).getPixelX(noteImageX);
+                fill(matrixStack, x1 + 1, y1, x_end + 2, y1 + 36, selectionColor);
+                fill(matrixStack, x_begin + 1, y2, x2 + 2, y2 + 36, selectionColor);
+
+                for(int y = y1 + tabHeight; y <= y2 - tabHeight; y += tabHeight){
+                    fill(matrixStack, x_begin + 1, y, x_end + 2, y + 36, selectionColor);
+                }
+            }
+        }
+    }
+
     @Override
     public void render(MatrixStack matrixStack, int mouseX, int mouseY, float partialTicks) {
         GlStateManager.color4f(1.0F, 1.0F, 1.0F, 1.0F);
@@ -450,85 +591,23 @@ public class GuiMusicSheet extends Screen {
                 fill(matrixStack, noteImageX + paletteX + (j * paletteWidth) - 1, noteImageY + paletteY - 1, noteImageX + paletteX + (j * paletteWidth) + paletteWidth + 1, noteImageY + paletteY + paletteWidth + 1, 0xFFFFFF00);
                 fill(matrixStack, noteImageX + paletteX + (j * paletteWidth), noteImageY + paletteY, noteImageX + paletteX + (j * paletteWidth) + paletteWidth, noteImageY + paletteY + paletteWidth, octaveColors[j]);
 
-                drawCursor(matrixStack, editCursor, 0xFFAA2222);
-
-                if(editCursor != editCursorEnd){
-                    drawCursor(matrixStack, editCursorEnd, 0xFFAA2222);
-
-                    // Render selection rectangle
-                    int selectionColor = 0x882222AA;
-                    Note beginNote = new Note(editCursor, 11);
-                    Note endNote = new Note(editCursorEnd, 11);
-                    int x1 = beginNote.getPixelX(noteImageX);
-                    int y1 = beginNote.getPixelY(noteImageY);
-                    int x2 = endNote.getPixelX(noteImageX);
-                    int y2 = endNote.getPixelY(noteImageY);
-
-                    if(y1 == y2){
-                        fill(matrixStack, x1 + 1, y1, x2 + 2, y1 + 36, selectionColor);
-                    }
-                    else{
-                        int x_end = new Note(beatsInTab-1, 11).getPixelX(noteImageX);
-                        int x_begin = new Note(0, 11).getPixelX(noteImageX);
-                        fill(matrixStack, x1 + 1, y1, x_end + 2, y1 + 36, selectionColor);
-                        fill(matrixStack, x_begin + 1, y2, x2 + 2, y2 + 36, selectionColor);
-
-                        for(int y = y1 + tabHeight; y <= y2 - tabHeight; y += tabHeight){
-                            fill(matrixStack, x_begin + 1, y, x_end + 2, y + 36, selectionColor);
-                        }
-                    }
-                }
+                drawSelection(matrixStack);
             } else {
                 int k = this.font.getStringWidth(noteTitle);
                 this.font.drawString(matrixStack, noteTitle, (noteImageX + (noteImageWidth - k) / 2.0f), noteImageY + 12, 0xFF000000);
 
                 if(this.selfSigned){
-                    drawCursor(matrixStack, editCursor, 0xFFAA2222);
-
-                    if(editCursor != editCursorEnd){
-                        drawCursor(matrixStack, editCursorEnd, 0xFFAA2222);
-
-                        // Render selection rectangle
-                        int selectionColor = 0x882222AA;
-                        Note beginNote = new Note(editCursor, 11);
-                        Note endNote = new Note(editCursorEnd, 11);
-                        int x1 = beginNote.getPixelX(noteImageX);
-                        int y1 = beginNote.getPixelY(noteImageY);
-                        int x2 = endNote.getPixelX(noteImageX);
-                        int y2 = endNote.getPixelY(noteImageY);
-
-                        if(y1 == y2){
-                            fill(matrixStack, x1 + 1, y1, x2 + 2, y1 + 36, selectionColor);
-                        }
-                        else{
-                            int x_end = new Note(beatsInTab-1, 11).getPixelX(noteImageX);
-                            int x_begin = new Note(0, 11).getPixelX(noteImageX);
-                            fill(matrixStack, x1 + 1, y1, x_end + 2, y1 + 36, selectionColor);
-                            fill(matrixStack, x_begin + 1, y2, x2 + 2, y2 + 36, selectionColor);
-
-                            for(int y = y1 + tabHeight; y <= y2 - tabHeight; y += tabHeight){
-                                fill(matrixStack, x_begin + 1, y, x_end + 2, y + 36, selectionColor);
-                            }
-                        }
-                    }
+                    drawSelection(matrixStack);
                 }
             }
 
-            // Neighbor notes
-            if(!neighborsHidden) {
-                for (byte[] m : neighborMusics) {
-                    for (int i = 0; i < m.length; i++) {
-                        drawNote(matrixStack, i, m, octaveColorsTrans);
-                    }
-                }
-            }
+            noteGrid.render(matrixStack, noteImageX, noteImageY, this::buildNoteGrid);
 
-            // The notes
-            for (int i = 0; i < length; i++) {
-                drawNote(matrixStack, i, music, octaveColors);
-            }
+            String pageNumber = (page + 1) + "/" + Math.max(page + 1, MusicPages.getPageCount(length));
+            int pageNumberWidth = this.font.getStringWidth(pageNumber);
+            this.font.drawStringWithShadow(matrixStack, pageNumber, noteImageX + noteImageWidth + 28 - pageNumberWidth / 2.0f, 118, 0xFFFFFFFF);
         }
-        if (previewStarted) {
+        if (previewStarted && isOnPage(previewCursor - 1)) {
             int i = previewCursor - 1;
 
             Note note = new Note(i, 11);
@@ -561,14 +640,32 @@ public class GuiMusicSheet extends Screen {
         }
     }
 
-    private void drawNote(MatrixStack matrixStack, int i, byte[] music, int[] octaveColors) {
+    // The notes of the page, redone only when they change
+    private void buildNoteGrid(NoteGridCache.Quads quads) {
+        int pageStart = page * pageBeats;
+        // Neighbor notes
+        if(!neighborsHidden) {
+            for (byte[] m : neighborMusics) {
+                for (int i = pageStart; i < pageStart + pageBeats && i < m.length; i++) {
+                    drawNote(quads, i, m, octaveColorsTrans);
+                }
+            }
+        }
+
+        // The notes
+        for (int i = pageStart; i < pageStart + pageBeats && i < length; i++) {
+            drawNote(quads, i, music, octaveColors);
+        }
+    }
+
+    private void drawNote(NoteGridCache.Quads quads, int i, byte[] music, int[] octaveColors) {
         if (music[i] != 0) {
             int value = music[i];
             int height = (value - 1) % 12;
             Note note = new Note(i, height);
-            int x = note.getPixelX(noteImageX);
-            int y = note.getPixelY(noteImageY);
-            fill(matrixStack, x, y, x + 3, y + 3, octaveColors[(value - 1) / 12]);
+            int x = note.getPixelX(0);
+            int y = note.getPixelY(0);
+            quads.fill(x, y, x + 3, y + 3, octaveColors[(value - 1) / 12]);
         }
     }
 
@@ -576,24 +673,25 @@ public class GuiMusicSheet extends Screen {
         this.previewStarted = false;
         this.previewing = true;
         this.previewCursor = editCursor;
+        this.previewFrom = editCursor;
+        this.previewMixKey = null;
         this.updateCount = 0;
         this.buttonPreview.setTexStarts(240, 0);
     }
 
     private void stopPreview() {
+        stopPreviewSound();
         this.previewing = false;
         this.previewStarted = false;
         this.buttonPreview.setTexStarts(224, 0);
     }
 
-    private void updateLength() {
-        for (int i = length - 1; i >= 0; i--) {
-            if (this.music[i] != 0) {
-                length = i + 1;
-                return;
-            }
+    private void edited(boolean changed) {
+        if (changed) {
+            length = editor.getLength();
+            dirty = true;
+            noteGrid.invalidate();
         }
-        length = 0;
     }
 
     /**
@@ -606,7 +704,8 @@ public class GuiMusicSheet extends Screen {
         int mouseY = (int)Math.round(dmouseY);
 
         boolean viewingSelfSigned = isSigned && selfSigned;
-        boolean composing = !isSigned && !gettingSigned;
+        // Nothing is edited until all the pages are here, they would overwrite the edits
+        boolean composing = !isSigned && !gettingSigned && sheetPages.isLoaded();
 
         if(composing || viewingSelfSigned){
             if (mouseButton == 1) {
@@ -614,7 +713,7 @@ public class GuiMusicSheet extends Screen {
                 int my = mouseY - noteImageY;
                 if (validClick(mx, my)) {
                     Note note = new Note();
-                    note.setNoteCoords(mx, my);
+                    note.setNoteCoords(mx, my, page);
                     selectionStart = editCursorEnd = editCursor = note.getNoteX();
                 }
             }
@@ -630,7 +729,7 @@ public class GuiMusicSheet extends Screen {
                 if (validClick(mx, my)) {
                     //System.out.println("length: "+length);
                     Note note = new Note();
-                    note.setNoteCoords(mx, my);
+                    note.setNoteCoords(mx, my, page);
                     int x = note.getNoteX();
                     int y = note.getNoteY();
                     if (y == 12) return false;
@@ -667,7 +766,7 @@ public class GuiMusicSheet extends Screen {
                 int my = mouseY - noteImageY;
                 if (validClick(mx, my)) {
                     Note note = new Note();
-                    note.setNoteCoords(mx, my);
+                    note.setNoteCoords(mx, my, page);
                     int noteX = note.getNoteX();
                     if (selectionStart > noteX) {
                         editCursor = noteX;
@@ -687,19 +786,10 @@ public class GuiMusicSheet extends Screen {
 
     private void changeNote(int x, byte note, boolean play) {
         if (note >= 0 && note <= 48) {
-            music[x] = note;
-            if (note != 0) {
-                if(play){
-                    playSound(note - 1, previewInstrument);
-//                    editingPlayer.world.playSound(editingPlayer, editingPlayer.getPosition(), SoundEvents.harp_mcs[note - 1], SoundCategory.PLAYERS, 3.0f, 1.0f);
-                }
-                if (x > length - 1) {
-                    length = x + 1;
-                }
-            } else if (x == length - 1) {
-                updateLength();
+            edited(editor.set(x, note));
+            if (note != 0 && play) {
+                playSound(note - 1, previewInstrument);
             }
-            dirty = true;
         }
     }
 
@@ -709,29 +799,24 @@ public class GuiMusicSheet extends Screen {
         if (length == 0 || length <= x) {
             return;
         }
-        dirty = true;
-        boolean full = false;
-        int l = length;
-        if (l == totalBeats) {
-            full = true;
-            l--;
+        edited(editor.insert(x, new byte[]{0}));
+    }
+
+    private void putNote(int x, byte note) {
+        if (x < length && x < totalBeats - 1) {
+            edited(editor.insert(x, new byte[]{note}));
         } else {
-            length++;
-        }
-        for (int i = l - 1; i >= x; i--) {
-            music[i + 1] = music[i];
+            edited(editor.set(x, note));
         }
-        music[x] = 0;
-        if (full) {
-            updateLength();
+        if (x < totalBeats - 1) {
+            addEditCursor(1);
         }
+        playSound(note - 1, previewInstrument);
     }
 
     private void encodeToClipboard(){
-        String encodeBytes = Base64.getEncoder().encodeToString(Arrays.copyOfRange(music, editCursor, editCursorEnd + 1));
+        String encodeBytes = Base64.getEncoder().encodeToString(editor.copy(editCursor, editCursorEnd + 1));
         GLFW.glfwSetClipboardString(Minecraft.getInstance().getMainWindow().getHandle(), encodeBytes);
-
-        editCursorEnd = editCursor;
     }
 
     private void decodeFromClipboard(){
@@ -753,11 +838,10 @@ public class GuiMusicSheet extends Screen {
                 }
             }
 
-            // Copy values
-            for (byte b : musicPiece) {
-                putSpace(editCursor);
-                changeNote(editCursor - 1, b, false);
-            }
+            // A selection is replaced by the pasted notes
+            int end = editCursorEnd != editCursor ? editCursorEnd + 1 : editCursor;
+            edited(editor.replace(editCursor, end, musicPiece));
+            editCursor = Math.min(editCursor + musicPiece.length, totalBeats - 1);
         }
     }
 
@@ -766,11 +850,17 @@ public class GuiMusicSheet extends Screen {
         setListener(null);
         super.keyPressed(keyCode, scanCode, modifiers);
 
+        if (!this.gettingSigned && (keyCode == GLFW.GLFW_KEY_PAGE_UP || keyCode == GLFW.GLFW_KEY_PAGE_DOWN)) {
+            setPage(keyCode == GLFW.GLFW_KEY_PAGE_UP ? page - 1 : page + 1);
+            return true;
+        }
+
         // Copying when viewing self signed
         boolean viewingSelfSigned = isSigned && selfSigned;
         if(viewingSelfSigned){
             if(keyCode == GLFW.GLFW_KEY_C && (modifiers & GLFW.GLFW_MOD_CONTROL) == GLFW.GLFW_MOD_CONTROL) {
                 encodeToClipboard();
+                editCursorEnd = editCursor;
             }
             if(keyCode == GLFW.GLFW_KEY_A && (modifiers & GLFW.GLFW_MOD_CONTROL) == GLFW.GLFW_MOD_CONTROL){
                 editCursor = 0;
@@ -800,19 +890,16 @@ public class GuiMusicSheet extends Screen {
                         break;
                 }
                 return true;
-            } else {
+            } else if (sheetPages.isLoaded()) {
                 int x = editCursor;
                 boolean resetEditCursorEnd = true;
+                boolean control = (modifiers & GLFW.GLFW_MOD_CONTROL) == GLFW.GLFW_MOD_CONTROL;
+                boolean shift = (modifiers & GLFW.GLFW_MOD_SHIFT) == GLFW.GLFW_MOD_SHIFT;
                 switch (keyCode) {
                     case GLFW.GLFW_KEY_DELETE:
                         if (length == 0 || length <= x) break;
-                        dirty = true;
                         if(editCursorEnd == x){
-                            for (int i = x; i < length - 1; i++) {
-                                music[i] = music[i + 1];
-                            }
-                            music[length - 1] = 0;
-                            length--;
+                            edited(editor.delete(x, x + 1));
                         }else{
                             deleteSelected();
                         }
@@ -822,21 +909,26 @@ public class GuiMusicSheet extends Screen {
                             if (x == 0) break;
                             addEditCursor(-1);
                             if (length == 0 || length < x) break;
-                            dirty = true;
-                            // manual array copy required, don't change
-                            for (int i = x - 1; i < length - 1; i++) {
-                                music[i] = music[i + 1];
-                            }
-                            music[length - 1] = 0;
-                            length--;
+                            edited(editor.delete(x - 1, x));
                         }else{
                             if (length == 0 || length < x) break;
-                            dirty = true;
                             deleteSelected();
                         }
                         break;
                     case GLFW.GLFW_KEY_SPACE:
-                        putSpace(x);
+                        if(editCursorEnd != x){
+                            // Empty beats as many as the selected ones, the selection moves after them
+                            int count = editCursorEnd - x + 1;
+                            if (length > x) {
+                                edited(editor.insert(x, new byte[count]));
+                            }
+                            editCursor = Math.min(x + count, totalBeats - 1);
+                            editCursorEnd = Math.min(editCursorEnd + count, totalBeats - 1);
+                            resetEditCursorEnd = false;
+                        }
+                        else{
+                            putSpace(x);
+                        }
                         break;
                     case GLFW.GLFW_KEY_RIGHT:
                         addEditCursor(1);
@@ -847,10 +939,20 @@ public class GuiMusicSheet extends Screen {
                         if (editCursor < 0) setEditCursor(totalBeats - 1);
                         break;
                     case GLFW.GLFW_KEY_DOWN:
+                        if(control){
+                            transposeSelected(shift ? -12 : -1);
+                            resetEditCursorEnd = false;
+                            break;
+                        }
                         addEditCursor(beatsInTab);
                         if (editCursor >= totalBeats) addEditCursor(-totalBeats);
                         break;
                     case GLFW.GLFW_KEY_UP:
+                        if(control){
+                            transposeSelected(shift ? 12 : 1);
+                            resetEditCursorEnd = false;
+                            break;
+                        }
                         addEditCursor(-beatsInTab);
                         if (editCursor < 0) addEditCursor(totalBeats);
                         break;
@@ -861,17 +963,17 @@ public class GuiMusicSheet extends Screen {
                             stopPreview();
                         break;
                     case GLFW.GLFW_KEY_C:
-                        if((modifiers & GLFW.GLFW_MOD_CONTROL) == GLFW.GLFW_MOD_CONTROL){
+                        if(control){
                             encodeToClipboard();
                         }
                         break;
                     case GLFW.GLFW_KEY_V:
-                        if((modifiers & GLFW.GLFW_MOD_CONTROL) == GLFW.GLFW_MOD_CONTROL){
+                        if(control){
                             decodeFromClipboard();
                         }
                         break;
                     case GLFW.GLFW_KEY_A:
-                        if((modifiers & GLFW.GLFW_MOD_CONTROL) == GLFW.GLFW_MOD_CONTROL){
+                        if(control){
                             editCursor = 0;
                             editCursorEnd = length - 1;
                             resetEditCursorEnd = false;
@@ -882,12 +984,30 @@ public class GuiMusicSheet extends Screen {
                         break;
                     case GLFW.GLFW_KEY_LEFT_CONTROL:
                     case GLFW.GLFW_KEY_RIGHT_CONTROL:
+                    case GLFW.GLFW_KEY_LEFT_SHIFT:
+                    case GLFW.GLFW_KEY_RIGHT_SHIFT:
                         resetEditCursorEnd = false;
                         break;
+                    // Without control these are note keys on some layouts
+                    case GLFW.GLFW_KEY_X:
+                        if(control){
+                            encodeToClipboard();
+                            deleteSelected();
+                            break;
+                        }
+                    case GLFW.GLFW_KEY_Z:
+                        if(control){
+                            edited(shift ? editor.redo() : editor.undo());
+                            break;
+                        }
+                    case GLFW.GLFW_KEY_Y:
+                        if(control){
+                            edited(editor.redo());
+                            break;
+                        }
                     default:
                         if (scanCode >= 16 && scanCode <= 27) {
-                            putSpace(x);
-                            changeNote(x, (byte) (scanCode - 15 + 12 * currentOctave));
+                            putNote(x, (byte) (scanCode - 15 + 12 * currentOctave));
                             break;
                         }
                         if (scanCode >= 30 && scanCode <= 33) {
@@ -898,24 +1018,18 @@ public class GuiMusicSheet extends Screen {
                 if(resetEditCursorEnd) {
                     editCursorEnd = editCursor;
                 }
+                followCursor(editCursor);
             }
         }
         return true;
     }
 
     private void deleteSelected() {
-        int diff = editCursorEnd - editCursor + 1;
-        int deleted = 0;
-        for(int i = editCursor; i < length; i++){
-            if(i + diff < length){
-                music[i] = music[i + diff];
-            }
-            else{
-                music[i] = 0;
-                deleted++;
-            }
-        }
-        length -= deleted;
+        edited(editor.delete(editCursor, editCursorEnd + 1));
+    }
+
+    private void transposeSelected(int semitones) {
+        edited(editor.transpose(editCursor, editCursorEnd + 1, semitones));
     }
 
     private void setEditCursor(int x){
@@ -965,12 +1079,101 @@ public class GuiMusicSheet extends Screen {
      */
     @Override
     public void onClose() {
+        stopPreviewSound();
+        noteGrid.close();
         if (dirty) {
-            MusicUpdatePacket pack = new MusicUpdatePacket(music, length, pause, isSigned, noteTitle, (byte)previewInstrument, prevInsLocked);
+            MusicUpdatePacket pack = new MusicUpdatePacket(getChangedPages(), length, pause, isSigned, noteTitle, (byte)previewInstrument, prevInsLocked);
             XercaMusic.NETWORK_HANDLER.sendToServer(pack);
         }
     }
 
+    /**
+     * @return the notes of the pages that are different than on the server, null for the others
+     */
+    private byte[][] getChangedPages() {
+        byte[][] pages = new byte[MusicPages.getPageCount(length)][];
+        for (int i = 0; i < pages.length; i++) {
+            int start = i * pageBeats;
+            for (int j = start; j < start + pageBeats; j++) {
+                if (music[j] != savedMusic[j]) {
+                    pages[i] = Arrays.copyOfRange(music, start, Math.min(length, start + pageBeats));
+                    break;
+                }
+            }
+        }
+        return pages;
+    }
+
+    /**
+     * Fills the notes of a sheet as its pages arrive from the server
+     */
+    private static class SheetPages {
+        private final CompoundNBT tag;
+        private final byte[] music;
+        private final byte[] savedMusic;
+        private final boolean[] loaded;
+        private boolean allLoaded = true;
+
+        /**
+         * @param savedMusic also gets the notes if not null
+         */
+        SheetPages(CompoundNBT tag, byte[] music, byte[] savedMusic) {
+            this.tag = tag;
+            this.music = music;
+            this.savedMusic = savedMusic;
+            if (MusicCodec.hasMusic(tag)) {
+                // Not moved to pages yet, all the notes are in the tag
+                this.loaded = new boolean[0];
+                byte[] inlineMusic = MusicCodec.readMusic(tag);
+                copy(inlineMusic, 0, Math.min(inlineMusic.length, music.length));
+            }
+            else if (MusicPages.getId(tag) != null) {
+                this.loaded = new boolean[MusicPages.getPageCount(tag)];
+                this.allLoaded = loaded.length == 0;
+                update();
+            }
+            else {
+                this.loaded = new boolean[0];
+            }
+        }
+
+        /**
+         * @return true if any page arrived
+         */
+        boolean update() {
+            if (allLoaded) {
+                return false;
+            }
+            boolean changed = false;
+            allLoaded = true;
+            for (int i = 0; i < loaded.length; i++) {
+                if (!loaded[i]) {
+                    byte[] notes = ClientMusicPages.getPage(tag, i);
+                    if (notes != null) {
+                        copy(notes, i * pageBeats, Math.min(notes.length, pageBeats));
+                        loaded[i] = true;
+                        changed = true;
+                    }
+                    else {
+                        allLoaded = false;
+                    }
+                }
+            }
+            return changed;
+        }
+
+        boolean isLoaded() {
+            return allLoaded;
+        }
+
+        private void copy(byte[] notes, int start, int count) {
+            System.arraycopy(notes, 0, music, start, count);
+            if (savedMusic != null) {
+                System.arraycopy(notes, 0, savedMusic, start, count);
+            }
+        }
+    }
+
     private boolean validClick(int x, int y) {
         return x <= endingX && x >= startingX && y <= endingY && y >= startingY;
     }
@@ -0,0 +1,165 @@
+package xerca.xercamusic.client;
+
+import com.google.common.collect.Maps;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.audio.AudioStreamBuffer;
+import net.minecraft.client.audio.AudioStreamManager;
+import net.minecraft.client.audio.Sound;
+import net.minecraft.client.audio.SoundEngine;
+import net.minecraft.client.audio.SoundEventAccessor;
+import net.minecraft.client.audio.SoundHandler;
+import net.minecraft.util.ResourceLocation;
+import net.minecraft.util.SoundEvent;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.api.distmarker.OnlyIn;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import xerca.xercamusic.common.XercaMusic;
+import xerca.xercamusic.common.item.ItemInstrument;
+import xerca.xercamusic.common.item.Items;
+
+import javax.annotation.Nullable;
+import java.lang.reflect.Field;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Loads the samples of an instrument when it is about to be played and unloads them once it hasn't been played for a
+ * while.
+ *
+ * The sound engine already decodes a sample on its first play, but the first notes of an instrument then wait for it,
+ * and it keeps every sample it decoded until the resources are reloaded. Here all samples of an instrument are decoded
+ * in the background as soon as it shows up nearby, and the samples of instruments nobody played for a minute are freed.
+ */
+@OnlyIn(Dist.CLIENT)
+@Mod.EventBusSubscriber(modid = XercaMusic.MODID, value = Dist.CLIENT)
+public class InstrumentSamples {
+    private static final long UNLOAD_AFTER = 60 * 20;
+    private static final int CHECK_INTERVAL = 20 * 20;
+
+    private static final Map<ItemInstrument, Long> lastUsed = Maps.newHashMap();
+    private static final Map<SoundEvent, ItemInstrument> instrumentOfSound = Maps.newHashMap();
+    private static long ticks = 0;
+    private static boolean reflectionFailed = false;
+    private static AudioStreamManager streamManager = null;
+    private static Map<ResourceLocation, CompletableFuture<AudioStreamBuffer>> bufferCache = null;
+
+    /**
+     * Starts loading the samples of an instrument in the background
+     */
+    public static void preload(ItemInstrument instrument) {
+        if(instrument == null){
+            return;
+        }
+        boolean loaded = lastUsed.containsKey(instrument);
+        lastUsed.put(instrument, ticks);
+        if(loaded || !findEngine()){
+            return;
+        }
+        for(int i = 0; i < 48; i++){
+            ResourceLocation location = getLocation(instrument.getSound(i));
+            if(location != null){
+                streamManager.createResource(location);
+            }
+        }
+    }
+
+    /**
+     * Marks the instrument of a note sound as used, loading the rest of its samples if it wasn't
+     */
+    static void onPlay(SoundEvent event) {
+        if(instrumentOfSound.isEmpty()){
+            for(ItemInstrument instrument : Items.instruments){
+                for(int i = 0; i < 48; i++){
+                    instrumentOfSound.put(instrument.getSound(i), instrument);
+                }
+            }
+        }
+        ItemInstrument instrument = instrumentOfSound.get(event);
+        if(instrument != null){
+            preload(instrument);
+        }
+    }
+
+    @Nullable
+    private static ResourceLocation getLocation(SoundEvent event) {
+        SoundEventAccessor accessor = Minecraft.getInstance().getSoundHandler().getAccessor(event.getName());
+        if(accessor == null){
+            return null;
+        }
+        Sound sound = accessor.cloneEntry();
+        return sound == SoundHandler.MISSING_SOUND ? null : sound.getSoundAsOggLocation();
+    }
+
+    private static void unload(ItemInstrument instrument) {
+        for(int i = 0; i < 48; i++){
+            ResourceLocation location = getLocation(instrument.getSound(i));
+            if(location == null){
+                continue;
+            }
+            CompletableFuture<AudioStreamBuffer> buffer = bufferCache.get(location);
+            // Samples still being decoded are left alone
+            if(buffer != null && buffer.isDone()){
+                bufferCache.remove(location);
+                if(!buffer.isCompletedExceptionally()){
+                    buffer.join().deleteBuffer();
+                }
+            }
+        }
+    }
+
+    @SubscribeEvent
+    public static void onClientTick(TickEvent.ClientTickEvent event) {
+        if(event.phase != TickEvent.Phase.END){
+            return;
+        }
+        ticks++;
+        if(ticks % CHECK_INTERVAL != 0 || lastUsed.isEmpty() || !findEngine()){
+            return;
+        }
+        Iterator<Map.Entry<ItemInstrument, Long>> it = lastUsed.entrySet().iterator();
+        while(it.hasNext()){
+            Map.Entry<ItemInstrument, Long> entry = it.next();
+            // Notes are much shorter than this, so none of the unloaded samples can still be playing
+            if(ticks - entry.getValue() > UNLOAD_AFTER){
+                it.remove();
+                unload(entry.getKey());
+            }
+        }
+    }
+
+    // The stream manager and its cache are private, they are found by their types
+    private static boolean findEngine() {
+        if(streamManager != null){
+            return true;
+        }
+        if(reflectionFailed){
+            return false;
+        }
+        try {
+            SoundEngine engine = getFieldOfType(Minecraft.getInstance().getSoundHandler(), SoundEngine.class);
+            streamManager = getFieldOfType(engine, AudioStreamManager.class);
+            bufferCache = getFieldOfType(streamManager, Map.class);
+            return true;
+        } catch (IllegalAccessException | IllegalStateException e) {
+            XercaMusic.LOGGER.warn("Could not find the sound engine, instrument samples will be loaded on demand: " + e);
+            streamManager = null;
+            bufferCache = null;
+            reflectionFailed = true;
+            return false;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T getFieldOfType(Object owner, Class<?> type) throws IllegalAccessException {
+        for(Field field : owner.getClass().getDeclaredFields()){
+            if(type.isAssignableFrom(field.getType())){
+                field.setAccessible(true);
+                return (T) field.get(owner);
+            }
+        }
+        throw new IllegalStateException("No " + type.getSimpleName() + " field in " + owner.getClass().getSimpleName());
+    }
+}
@@ -0,0 +1,175 @@
+package xerca.xercamusic.client;
+
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.api.distmarker.OnlyIn;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * Edits the notes of a music sheet in place, with undo and redo.
+ *
+ * Every edit replaces a range of beats with other beats, moving the rest of the sheet once, so an edit takes time
+ * proportional to the beats it touches and the beats after them. Beats pushed past the end of the sheet are kept in
+ * the edit and put back when it is undone.
+ */
+@OnlyIn(Dist.CLIENT)
+public class MusicEditor {
+    private static final int MAX_HISTORY = 100;
+    private static final byte[] EMPTY = new byte[0];
+
+    private final byte[] music;
+    private int length;
+    private final Deque<Edit> undoHistory = new ArrayDeque<>();
+    private final Deque<Edit> redoHistory = new ArrayDeque<>();
+
+    private static class Edit {
+        private final int pos;
+        private final byte[] removed;
+        private final byte[] inserted;
+        private byte[] dropped = EMPTY;
+
+        private Edit(int pos, byte[] removed, byte[] inserted) {
+            this.pos = pos;
+            this.removed = removed;
+            this.inserted = inserted;
+        }
+    }
+
+    MusicEditor(byte[] music, int length) {
+        this.music = music;
+        this.length = Math.max(0, Math.min(length, music.length));
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return a copy of the beats from start (inclusive) to end (exclusive)
+     */
+    public byte[] copy(int start, int end) {
+        start = clamp(start);
+        return Arrays.copyOfRange(music, start, Math.max(start, clamp(end)));
+    }
+
+    public boolean set(int pos, byte note) {
+        return replace(pos, pos + 1, new byte[]{note});
+    }
+
+    public boolean insert(int pos, byte[] notes) {
+        return replace(pos, pos, notes);
+    }
+
+    public boolean delete(int start, int end) {
+        return replace(start, end, EMPTY);
+    }
+
+    /**
+     * Moves every note from start (inclusive) to end (exclusive) by the given semitones. Nothing is changed if a note
+     * would leave the range of the instruments.
+     */
+    public boolean transpose(int start, int end, int semitones) {
+        byte[] notes = copy(start, end);
+        for(int i = 0; i < notes.length; i++){
+            if(notes[i] != 0){
+                int note = notes[i] + semitones;
+                if(note < 1 || note > 48){
+                    return false;
+                }
+                notes[i] = (byte) note;
+            }
+        }
+        return replace(start, end, notes);
+    }
+
+    /**
+     * Replaces the beats from start (inclusive) to end (exclusive) with the given notes, as a single undoable edit
+     *
+     * @return whether the sheet has changed
+     */
+    public boolean replace(int start, int end, byte[] notes) {
+        if(start < 0 || start >= music.length){
+            return false;
+        }
+        end = Math.max(start, clamp(end));
+        if(notes.length > music.length - start){
+            notes = Arrays.copyOf(notes, music.length - start);
+        }
+        byte[] removed = Arrays.copyOfRange(music, start, end);
+        if(Arrays.equals(removed, notes)){
+            return false;
+        }
+
+        Edit edit = new Edit(start, removed, notes);
+        edit.dropped = splice(start, removed.length, notes);
+        undoHistory.push(edit);
+        if(undoHistory.size() > MAX_HISTORY){
+            undoHistory.removeLast();
+        }
+        redoHistory.clear();
+        return true;
+    }
+
+    public boolean undo() {
+        Edit edit = undoHistory.poll();
+        if(edit == null){
+            return false;
+        }
+        splice(edit.pos, edit.inserted.length, edit.removed);
+        if(edit.dropped.length > 0){
+            System.arraycopy(edit.dropped, 0, music, music.length - edit.dropped.length, edit.dropped.length);
+            updateLength(music.length);
+        }
+        redoHistory.push(edit);
+        return true;
+    }
+
+    public boolean redo() {
+        Edit edit = redoHistory.poll();
+        if(edit == null){
+            return false;
+        }
+        splice(edit.pos, edit.removed.length, edit.inserted);
+        undoHistory.push(edit);
+        return true;
+    }
+
+    /**
+     * Replaces count beats at pos with the notes, moving the beats after them with a single copy
+     *
+     * @return the beats that were pushed past the end of the sheet
+     */
+    private byte[] splice(int pos, int count, byte[] notes) {
+        int growth = notes.length - count;
+        byte[] dropped = EMPTY;
+        if(growth > 0){
+            dropped = Arrays.copyOfRange(music, music.length - growth, music.length);
+            System.arraycopy(music, pos + count, music, pos + notes.length, music.length - pos - notes.length);
+        }
+        else if(growth < 0){
+            System.arraycopy(music, pos + count, music, pos + notes.length, music.length - pos - count);
+            Arrays.fill(music, music.length + growth, music.length, (byte) 0);
+        }
+        System.arraycopy(notes, 0, music, pos, notes.length);
+
+        // Beats after the old length were empty, so the notes can't go further than this
+        updateLength(Math.min(music.length, Math.max(length + growth, pos + notes.length)));
+        return dropped;
+    }
+
+    private void updateLength(int bound) {
+        for(int i = bound - 1; i >= 0; i--){
+            if(music[i] != 0){
+                length = i + 1;
+                return;
+            }
+        }
+        length = 0;
+    }
+
+    private int clamp(int pos) {
+        return Math.max(0, Math.min(pos, music.length));
+    }
+}
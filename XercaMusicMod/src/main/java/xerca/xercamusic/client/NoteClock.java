@@ -0,0 +1,141 @@
+package xerca.xercamusic.client;
+
+import net.minecraft.client.Minecraft;
+import net.minecraft.world.World;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.api.distmarker.OnlyIn;
+import net.minecraftforge.client.event.ClientPlayerNetworkEvent;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import xerca.xercamusic.common.XercaMusic;
+
+import java.util.PriorityQueue;
+
+/**
+ * Plays the notes of music boxes and music spirits at the exact time of their beat instead of at the tick that finds
+ * them due.
+ *
+ * Notes are given a time in ticks of the world, which may have a fraction. A clock that follows the ticks of the
+ * server turns it into a system time one tick later, so ticks that come late or bunched up behind a slow frame still
+ * give evenly spaced notes. A timing thread sleeps until each note is due and hands it to the main thread, since the
+ * sound engine may only be used from there.
+ */
+@OnlyIn(Dist.CLIENT)
+@Mod.EventBusSubscriber(modid = XercaMusic.MODID, value = Dist.CLIENT)
+public class NoteClock {
+    private static final long NANOS_PER_TICK = 50000000L;
+    // Room for ticks that come late, notes are played this much after their tick
+    private static final double LOOKAHEAD_TICKS = 1.0D;
+    // The clock is set again instead of slowly corrected when the ticks are off by more than this, like after a pause
+    private static final long RESYNC_NANOS = 250000000L;
+    private static final int CORRECTION_RATE = 16;
+
+    private static final Object lock = new Object();
+    private static final PriorityQueue<Note> notes = new PriorityQueue<>();
+    private static Thread thread = null;
+    private static long sequence = 0;
+
+    // System time of tick 0 of the world, only used on the main thread
+    private static long originNanos;
+    private static boolean synced = false;
+
+    /**
+     * @param tick the world time the note belongs to
+     * @param note plays the note, run on the main thread
+     */
+    public static void schedule(double tick, Runnable note) {
+        if(!synced){
+            note.run();
+            return;
+        }
+        long due = originNanos + (long) ((tick + LOOKAHEAD_TICKS) * NANOS_PER_TICK);
+        synchronized (lock) {
+            notes.add(new Note(due, sequence++, note));
+            if(thread == null){
+                thread = new Thread(NoteClock::run, "Xerca Music Note Clock");
+                thread.setDaemon(true);
+                thread.start();
+            }
+            lock.notifyAll();
+        }
+    }
+
+    private static void run() {
+        try {
+            while(true){
+                Note next;
+                synchronized (lock) {
+                    while(true){
+                        next = notes.peek();
+                        if(next == null){
+                            lock.wait();
+                            continue;
+                        }
+                        long wait = next.due - System.nanoTime();
+                        if(wait <= 0){
+                            notes.poll();
+                            break;
+                        }
+                        lock.wait(wait / 1000000L, (int) (wait % 1000000L));
+                    }
+                }
+                Minecraft.getInstance().execute(next.note);
+            }
+        } catch (InterruptedException e) {
+            synchronized (lock) {
+                thread = null;
+            }
+        }
+    }
+
+    // Follows the ticks of the world, whose time is kept in step with the server
+    @SubscribeEvent
+    public static void onClientTick(TickEvent.ClientTickEvent event) {
+        if(event.phase != TickEvent.Phase.START){
+            return;
+        }
+        Minecraft minecraft = Minecraft.getInstance();
+        World world = minecraft.world;
+        if(world == null || minecraft.isGamePaused()){
+            return;
+        }
+        long now = System.nanoTime();
+        long expected = world.getGameTime() * NANOS_PER_TICK;
+        long error = now - (originNanos + expected);
+        if(!synced || Math.abs(error) > RESYNC_NANOS){
+            originNanos = now - expected;
+            synced = true;
+        }
+        else{
+            originNanos += error / CORRECTION_RATE;
+        }
+    }
+
+    @SubscribeEvent
+    public static void onLoggedOut(ClientPlayerNetworkEvent.LoggedOutEvent event) {
+        synchronized (lock) {
+            notes.clear();
+        }
+        synced = false;
+    }
+
+    private static class Note implements Comparable<Note> {
+        private final long due;
+        // Notes due at the same time are played in the order they came
+        private final long order;
+        private final Runnable note;
+
+        private Note(long due, long order, Runnable note) {
+            this.due = due;
+            this.order = order;
+            this.note = note;
+        }
+
+        @Override
+        public int compareTo(Note other) {
+            int result = Long.compare(due, other.due);
+            return result != 0 ? result : Long.compare(order, other.order);
+        }
+    }
+}
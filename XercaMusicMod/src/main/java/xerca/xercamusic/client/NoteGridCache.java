@@ -0,0 +1,88 @@
+package xerca.xercamusic.client;
+
+import com.mojang.blaze3d.matrix.MatrixStack;
+import com.mojang.blaze3d.systems.RenderSystem;
+import net.minecraft.client.renderer.BufferBuilder;
+import net.minecraft.client.renderer.Tessellator;
+import net.minecraft.client.renderer.vertex.DefaultVertexFormats;
+import net.minecraft.client.renderer.vertex.VertexBuffer;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.api.distmarker.OnlyIn;
+import org.lwjgl.opengl.GL11;
+
+import java.util.function.Consumer;
+
+/**
+ * Keeps the notes of a music sheet in a vertex buffer, so they are drawn with a single call each frame and only
+ * built again after the notes change.
+ */
+@OnlyIn(Dist.CLIENT)
+public class NoteGridCache {
+    private VertexBuffer buffer = null;
+    private boolean valid = false;
+
+    public void invalidate() {
+        valid = false;
+    }
+
+    /**
+     * @param builder adds the quads of the notes, in coordinates relative to the sheet
+     */
+    public void render(MatrixStack matrixStack, float x, float y, Consumer<Quads> builder) {
+        if (!valid) {
+            BufferBuilder bufferBuilder = Tessellator.getInstance().getBuffer();
+            bufferBuilder.begin(GL11.GL_QUADS, DefaultVertexFormats.POSITION_COLOR);
+            builder.accept(new Quads(bufferBuilder));
+            bufferBuilder.finishDrawing();
+            if (buffer == null) {
+                buffer = new VertexBuffer(DefaultVertexFormats.POSITION_COLOR);
+            }
+            buffer.upload(bufferBuilder);
+            valid = true;
+        }
+
+        matrixStack.push();
+        matrixStack.translate(x, y, 0);
+        RenderSystem.enableBlend();
+        RenderSystem.disableTexture();
+        RenderSystem.defaultBlendFunc();
+        buffer.bindBuffer();
+        DefaultVertexFormats.POSITION_COLOR.setupBufferState(0L);
+        buffer.draw(matrixStack.getLast().getMatrix(), GL11.GL_QUADS);
+        VertexBuffer.unbindBuffer();
+        DefaultVertexFormats.POSITION_COLOR.clearBufferState();
+        RenderSystem.enableTexture();
+        RenderSystem.disableBlend();
+        matrixStack.pop();
+    }
+
+    public void close() {
+        if (buffer != null) {
+            buffer.close();
+            buffer = null;
+        }
+        valid = false;
+    }
+
+    /**
+     * Adds rectangles to the buffer the same way {@link net.minecraft.client.gui.AbstractGui#fill} draws them
+     */
+    public static class Quads {
+        private final BufferBuilder bufferBuilder;
+
+        private Quads(BufferBuilder bufferBuilder) {
+            this.bufferBuilder = bufferBuilder;
+        }
+
+        public void fill(int minX, int minY, int maxX, int maxY, int color) {
+            float a = (float)(color >> 24 & 255) / 255.0F;
+            float r = (float)(color >> 16 & 255) / 255.0F;
+            float g = (float)(color >> 8 & 255) / 255.0F;
+            float b = (float)(color & 255) / 255.0F;
+            bufferBuilder.pos(minX, maxY, 0.0D).color(r, g, b, a).endVertex();
+            bufferBuilder.pos(maxX, maxY, 0.0D).color(r, g, b, a).endVertex();
+            bufferBuilder.pos(maxX, minY, 0.0D).color(r, g, b, a).endVertex();
+            bufferBuilder.pos(minX, minY, 0.0D).color(r, g, b, a).endVertex();
+        }
+    }
+}
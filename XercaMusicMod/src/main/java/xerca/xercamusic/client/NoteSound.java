@@ -1,7 +1,10 @@
 package xerca.xercamusic.client;
 
-import net.minecraft.client.audio.LocatableSound;
 import net.minecraft.client.audio.ITickableSound;
+import net.minecraft.client.audio.LocatableSound;
+import net.minecraft.client.audio.SoundEventAccessor;
+import net.minecraft.client.audio.SoundHandler;
+import net.minecraft.util.ResourceLocation;
 import net.minecraft.util.SoundCategory;
 import net.minecraft.util.SoundEvent;
 import net.minecraftforge.api.distmarker.Dist;
@@ -13,19 +16,62 @@ public class NoteSound extends LocatableSound implements ITickableSound {
     private int fadingTicks = -1;
     private static final float[] fadeVolumes = {0.0f, 0.02f, 0.12f, 0.3f};
 
+    // Kept apart from the final fields of LocatableSound so that the sound can be reused for another note
+    private ResourceLocation location;
+    private SoundCategory noteCategory;
+
     NoteSound(SoundEvent soundEvent, SoundCategory category, float x, float y, float z, float volume, float pitch) {
         super(soundEvent, category);
+        this.repeat = false;
+        this.attenuationType = AttenuationType.LINEAR;
+        reset(soundEvent, category, x, y, z, volume, pitch);
+    }
+
+    void reset(SoundEvent soundEvent, SoundCategory category, float x, float y, float z, float volume, float pitch) {
+        this.location = soundEvent.getName();
+        this.noteCategory = category;
         this.volume = volume;
         this.pitch = pitch;
         this.x = x;
         this.y = y;
         this.z = z;
-        this.repeat = false;
-        this.attenuationType = AttenuationType.LINEAR;
+        this.donePlaying = false;
+        this.fadingTicks = -1;
     }
 
     public void stopSound() {
-        fadingTicks = 3;
+        if(fadingTicks < 0 && !donePlaying){
+            fadingTicks = 3;
+        }
+    }
+
+    float getBaseVolume() {
+        return volume;
+    }
+
+    boolean isFading() {
+        return fadingTicks >= 0;
+    }
+
+    @Override
+    public ResourceLocation getSoundLocation() {
+        return location;
+    }
+
+    @Override
+    public SoundCategory getCategory() {
+        return noteCategory;
+    }
+
+    @Override
+    public SoundEventAccessor createAccessor(SoundHandler handler) {
+        SoundEventAccessor accessor = handler.getAccessor(this.location);
+        if (accessor == null) {
+            this.sound = SoundHandler.MISSING_SOUND;
+        } else {
+            this.sound = accessor.cloneEntry();
+        }
+        return accessor;
     }
 
     @Override
@@ -0,0 +1,313 @@
+package xerca.xercamusic.client;
+
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.audio.IAudioStream;
+import net.minecraft.client.audio.OggAudioStream;
+import net.minecraft.client.audio.Sound;
+import net.minecraft.client.audio.SoundEventAccessor;
+import net.minecraft.client.audio.SoundHandler;
+import net.minecraft.resources.IResource;
+import net.minecraft.util.ResourceLocation;
+import net.minecraft.util.SoundEvent;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.api.distmarker.OnlyIn;
+import org.lwjgl.BufferUtils;
+import xerca.xercamusic.common.MusicCodec;
+import xerca.xercamusic.common.SoundEvents;
+import xerca.xercamusic.common.XercaMusic;
+import xerca.xercamusic.common.item.ItemInstrument;
+import xerca.xercamusic.common.item.Items;
+
+import javax.annotation.Nullable;
+import javax.sound.sampled.AudioFormat;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Renders the preview of a music sheet and its neighbor sheets into a single sound.
+ *
+ * The instrument samples are decoded once on a background thread, and the arrangement is mixed a little at a time as
+ * the sound engine reads it, so a preview of several sheets plays through one voice and only the part about to be heard
+ * is ever in memory. Mixes are cached by the content of the sheets they were made from.
+ */
+@OnlyIn(Dist.CLIENT)
+public class PreviewMixer {
+    static final int SAMPLE_RATE = 44100;
+    static final int SAMPLES_PER_TICK = SAMPLE_RATE / 20;
+    static final AudioFormat FORMAT = new AudioFormat(SAMPLE_RATE, 16, 1, true, false);
+    private static final int MAX_MIXES = 2;
+    // Decoded samples kept for later mixes, in bytes
+    private static final long MAX_SAMPLE_BYTES = 32L * 1024 * 1024;
+    // Volumes of a cut off note in the ticks after it is cut off, the same as NoteSound's fade
+    private static final float[] fadeVolumes = {0.3f, 0.12f, 0.02f};
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "Music Preview Mixer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Least recently used first
+    private static final LinkedHashMap<String, CompletableFuture<Mix>> mixes = new LinkedHashMap<>(4, 0.75f, true);
+    private static final LinkedHashMap<ResourceLocation, short[]> samples = new LinkedHashMap<>(64, 0.75f, true);
+    private static long sampleBytes = 0;
+
+    /**
+     * One sheet of the arrangement
+     */
+    public static class Track {
+        private final byte[] music;
+        private final int length;
+        private final int instrument;
+
+        public Track(byte[] music, int length, int instrument) {
+            this.music = music;
+            this.length = Math.min(length, music.length);
+            this.instrument = instrument;
+        }
+    }
+
+    public static String getKey(List<Track> tracks, int pause) {
+        StringBuilder key = new StringBuilder().append(pause);
+        for(Track track : tracks){
+            key.append(':').append(track.instrument).append(':');
+            key.append(Base64.getEncoder().encodeToString(MusicCodec.encode(track.music, track.length)));
+        }
+        return key.toString();
+    }
+
+    /**
+     * @return the mix of the tracks, which completes on the mixer thread
+     */
+    public static CompletableFuture<Mix> getMix(List<Track> tracks, int pause) {
+        String key = getKey(tracks, pause);
+        synchronized (mixes) {
+            CompletableFuture<Mix> mix = mixes.get(key);
+            if(mix == null){
+                // The tracks are copied, the sheet may be edited while it is mixed
+                Track[] copies = new Track[tracks.size()];
+                for(int i = 0; i < copies.length; i++){
+                    Track track = tracks.get(i);
+                    copies[i] = new Track(track.music.clone(), track.length, track.instrument);
+                }
+                mix = CompletableFuture.supplyAsync(() -> mix(copies, pause), executor);
+                mixes.put(key, mix);
+                if(mixes.size() > MAX_MIXES){
+                    mixes.remove(mixes.keySet().iterator().next());
+                }
+            }
+            return mix;
+        }
+    }
+
+    // Decodes the samples the tracks need and finds where the notes of cut off instruments end
+    private static Mix mix(Track[] tracks, int pause) {
+        int samplesPerBeat = pause * SAMPLES_PER_TICK;
+        int beats = 0;
+        for(Track track : tracks){
+            beats = Math.max(beats, track.length);
+        }
+
+        short[][][] trackSamples = new short[tracks.length][][];
+        int[][] cuts = new int[tracks.length][];
+        int longest = 0;
+        for(int t = 0; t < tracks.length; t++){
+            Track track = tracks[t];
+            trackSamples[t] = new short[48][];
+            cuts[t] = new int[track.length];
+            for(int i = 0; i < track.length; i++){
+                int note = track.music[i];
+                if(note > 0 && note <= 48 && trackSamples[t][note - 1] == null){
+                    short[] sample = getSample(getSound(track.instrument, note - 1));
+                    trackSamples[t][note - 1] = sample;
+                    longest = Math.max(longest, sample.length);
+                }
+            }
+
+            boolean cutOff = isCutOff(track.instrument);
+            int next = -1;
+            for(int i = track.length - 1; i >= 0; i--){
+                cuts[t][i] = cutOff && next >= 0 ? (next - i) * samplesPerBeat : Integer.MAX_VALUE;
+                if(track.music[i] > 0 && track.music[i] <= 48){
+                    next = i;
+                }
+            }
+        }
+        return new Mix(tracks, trackSamples, cuts, samplesPerBeat, beats * samplesPerBeat + longest, longest);
+    }
+
+    private static boolean isCutOff(int instrument) {
+        return instrument >= 0 && instrument < Items.instruments.length && Items.instruments[instrument].shouldCutOff;
+    }
+
+    private static SoundEvent getSound(int instrument, int note) {
+        if(instrument >= 0 && instrument < Items.instruments.length){
+            ItemInstrument ins = Items.instruments[instrument];
+            return ins.getSound(note);
+        }
+        return SoundEvents.harp_mcs[note];
+    }
+
+    /**
+     * Decodes the sample of a sound, as mono at the mix sample rate
+     */
+    private static short[] getSample(SoundEvent event) {
+        SoundEventAccessor accessor = Minecraft.getInstance().getSoundHandler().getAccessor(event.getName());
+        Sound sound = accessor == null ? SoundHandler.MISSING_SOUND : accessor.cloneEntry();
+        ResourceLocation location = sound.getSoundAsOggLocation();
+        synchronized (samples) {
+            short[] sample = samples.get(location);
+            if(sample != null){
+                return sample;
+            }
+        }
+
+        short[] sample = decode(location);
+        synchronized (samples) {
+            short[] old = samples.put(location, sample);
+            sampleBytes += sample.length * 2L - (old == null ? 0 : old.length * 2L);
+            while(sampleBytes > MAX_SAMPLE_BYTES && samples.size() > 1){
+                short[] removed = samples.remove(samples.keySet().iterator().next());
+                sampleBytes -= removed.length * 2L;
+            }
+        }
+        return sample;
+    }
+
+    private static short[] decode(ResourceLocation location) {
+        try (IResource resource = Minecraft.getInstance().getResourceManager().getResource(location);
+             InputStream input = resource.getInputStream();
+             OggAudioStream stream = new OggAudioStream(input)) {
+            AudioFormat format = stream.getAudioFormat();
+            ByteBuffer buffer = stream.readOggSound();
+            int channels = format.getChannels();
+            int frames = buffer.remaining() / 2 / channels;
+            float[] mono = new float[frames];
+            for(int i = 0; i < frames; i++){
+                float sum = 0;
+                for(int c = 0; c < channels; c++){
+                    sum += buffer.getShort();
+                }
+                mono[i] = sum / channels;
+            }
+            return resample(mono, format.getSampleRate());
+        } catch (IOException | RuntimeException e) {
+            XercaMusic.LOGGER.warn("Could not decode " + location + " for the music preview: " + e);
+            return new short[0];
+        }
+    }
+
+    private static short[] resample(float[] input, float rate) {
+        if(input.length == 0){
+            return new short[0];
+        }
+        double step = rate / SAMPLE_RATE;
+        int length = (int) ((input.length - 1) / step) + 1;
+        short[] output = new short[length];
+        for(int i = 0; i < length; i++){
+            double pos = i * step;
+            int index = (int) pos;
+            double frac = pos - index;
+            double next = index + 1 < input.length ? input[index + 1] : input[index];
+            output[i] = (short) Math.round(input[index] * (1 - frac) + next * frac);
+        }
+        return output;
+    }
+
+    /**
+     * An arrangement ready to be mixed. It only holds the notes and the samples they use, the sound itself is mixed by
+     * its streams.
+     */
+    public static class Mix {
+        private final Track[] tracks;
+        private final short[][][] trackSamples;
+        // Samples after its start where each note is cut off by the next one
+        private final int[][] cuts;
+        private final int samplesPerBeat;
+        private final int totalSamples;
+        private final int longest;
+
+        private Mix(Track[] tracks, short[][][] trackSamples, int[][] cuts, int samplesPerBeat, int totalSamples, int longest) {
+            this.tracks = tracks;
+            this.trackSamples = trackSamples;
+            this.cuts = cuts;
+            this.samplesPerBeat = samplesPerBeat;
+            this.totalSamples = totalSamples;
+            this.longest = longest;
+        }
+
+        IAudioStream open(int startBeat) {
+            return new Stream(this, (int) Math.min(totalSamples, (long) startBeat * samplesPerBeat));
+        }
+
+        /**
+         * Adds the sound from sample from (inclusive) to sample from + out.length (exclusive) to out
+         */
+        private void render(int from, float[] out) {
+            int to = from + out.length;
+            int firstBeat = Math.max(0, (from - longest) / samplesPerBeat);
+            for(int t = 0; t < tracks.length; t++){
+                Track track = tracks[t];
+                int lastBeat = Math.min(track.length - 1, (to - 1) / samplesPerBeat);
+                for(int i = firstBeat; i <= lastBeat; i++){
+                    int note = track.music[i];
+                    if(note <= 0 || note > 48){
+                        continue;
+                    }
+                    short[] sample = trackSamples[t][note - 1];
+                    int start = i * samplesPerBeat;
+                    int cut = cuts[t][i];
+                    int end = Math.min(sample.length, cut == Integer.MAX_VALUE ? Integer.MAX_VALUE : cut + fadeVolumes.length * SAMPLES_PER_TICK);
+                    for(int k = Math.max(0, from - start); k < end && start + k < to; k++){
+                        float gain = k < cut ? 1.0f : fadeVolumes[(k - cut) / SAMPLES_PER_TICK];
+                        out[start + k - from] += sample[k] * gain;
+                    }
+                }
+            }
+        }
+    }
+
+    private static class Stream implements IAudioStream {
+        private final Mix mix;
+        private int pos;
+
+        private Stream(Mix mix, int start) {
+            this.mix = mix;
+            this.pos = start;
+        }
+
+        @Override
+        public AudioFormat getAudioFormat() {
+            return FORMAT;
+        }
+
+        @Nullable
+        @Override
+        public ByteBuffer readOggSoundWithCapacity(int size) {
+            int count = Math.min(size / 2, mix.totalSamples - pos);
+            if(count <= 0){
+                return null;
+            }
+            float[] out = new float[count];
+            mix.render(pos, out);
+            pos += count;
+            ByteBuffer buffer = BufferUtils.createByteBuffer(count * 2);
+            for(int i = 0; i < count; i++){
+                buffer.putShort((short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(out[i]))));
+            }
+            buffer.flip();
+            return buffer;
+        }
+
+        @Override
+        public void close() {
+
+        }
+    }
+}
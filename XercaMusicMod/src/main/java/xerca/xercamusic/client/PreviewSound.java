@@ -0,0 +1,64 @@
+package xerca.xercamusic.client;
+
+import net.minecraft.client.audio.AudioStreamManager;
+import net.minecraft.client.audio.IAudioStream;
+import net.minecraft.client.audio.ITickableSound;
+import net.minecraft.client.audio.LocatableSound;
+import net.minecraft.client.audio.Sound;
+import net.minecraft.client.audio.SoundEventAccessor;
+import net.minecraft.client.audio.SoundHandler;
+import net.minecraft.util.ResourceLocation;
+import net.minecraft.util.SoundCategory;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.api.distmarker.OnlyIn;
+import xerca.xercamusic.common.XercaMusic;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Streams a mix made by {@link PreviewMixer}, heard the same everywhere around the listener.
+ */
+@OnlyIn(Dist.CLIENT)
+public class PreviewSound extends LocatableSound implements ITickableSound {
+    private static final ResourceLocation LOCATION = new ResourceLocation(XercaMusic.MODID, "music_preview");
+
+    private final IAudioStream stream;
+    private boolean donePlaying = false;
+
+    PreviewSound(IAudioStream stream) {
+        super(LOCATION, SoundCategory.PLAYERS);
+        this.stream = stream;
+        this.repeat = false;
+        this.global = true;
+        this.attenuationType = AttenuationType.NONE;
+        this.x = 0;
+        this.y = 0;
+        this.z = 0;
+    }
+
+    void stop() {
+        donePlaying = true;
+    }
+
+    // The sound isn't in sounds.json, it is made up here as a streamed sound
+    @Override
+    public SoundEventAccessor createAccessor(SoundHandler handler) {
+        this.sound = new Sound(LOCATION.toString(), 1.0f, 1.0f, 1, Sound.Type.FILE, true, false, 16);
+        return new SoundEventAccessor(LOCATION, null);
+    }
+
+    @Override
+    public CompletableFuture<IAudioStream> getStream(AudioStreamManager soundBuffers, Sound sound, boolean looping) {
+        return CompletableFuture.completedFuture(stream);
+    }
+
+    @Override
+    public boolean isDonePlaying() {
+        return donePlaying;
+    }
+
+    @Override
+    public void tick() {
+
+    }
+}
@@ -0,0 +1,114 @@
+package xerca.xercamusic.client;
+
+import com.google.common.collect.Lists;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.audio.SoundHandler;
+import net.minecraft.util.SoundCategory;
+import net.minecraft.util.SoundEvent;
+import net.minecraft.util.math.vector.Vector3d;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.api.distmarker.OnlyIn;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Plays every note sound of the mod through a fixed number of voices.
+ *
+ * When all voices are busy, a new note takes the voice that is heard the least, judged by its volume and distance to
+ * the listener, the oldest one winning ties. A note quieter than all playing voices is dropped instead. Finished
+ * sounds are kept and reused for later notes.
+ */
+@OnlyIn(Dist.CLIENT)
+public class VoicePool {
+    private static final int MAX_VOICES = 64;
+
+    private static final List<NoteSound> voices = Lists.newArrayList();
+    private static final Deque<NoteSound> freeSounds = new ArrayDeque<>();
+    // Last sound of each source whose instrument cuts off its previous note
+    private static final Map<Object, NoteSound> lastPlayed = new WeakHashMap<>();
+
+    /**
+     * @param source what plays the note, its previous note is stopped if cutOff is set
+     */
+    public static void play(SoundEvent event, double x, double y, double z, SoundCategory category, float volume, float pitch, Object source, boolean cutOff) {
+        SoundHandler soundHandler = Minecraft.getInstance().getSoundHandler();
+        InstrumentSamples.onPlay(event);
+        if(cutOff && source != null){
+            NoteSound previous = lastPlayed.remove(source);
+            if(previous != null){
+                previous.stopSound();
+            }
+        }
+
+        releaseFinished(soundHandler);
+        if(voices.size() >= MAX_VOICES){
+            Vector3d listener = Minecraft.getInstance().gameRenderer.getActiveRenderInfo().getProjectedView();
+            NoteSound quietest = null;
+            double quietestLoudness = Double.MAX_VALUE;
+            // Voices are in the order they started, so the oldest wins a tie
+            for(NoteSound voice : voices){
+                double loudness = voice.isFading() ? 0 : loudness(voice.getX(), voice.getY(), voice.getZ(), voice.getBaseVolume(), listener);
+                if(loudness < quietestLoudness){
+                    quietest = voice;
+                    quietestLoudness = loudness;
+                }
+            }
+            if(quietest == null || loudness(x, y, z, volume, listener) < quietestLoudness){
+                return;
+            }
+            // The engine still knows the stolen sound until its next tick, so it is not reused
+            soundHandler.stop(quietest);
+            voices.remove(quietest);
+            lastPlayed.values().remove(quietest);
+        }
+
+        NoteSound sound = freeSounds.pollFirst();
+        if(sound == null){
+            sound = new NoteSound(event, category, (float)x, (float)y, (float)z, volume, pitch);
+        }
+        else{
+            sound.reset(event, category, (float)x, (float)y, (float)z, volume, pitch);
+        }
+        soundHandler.play(sound);
+        voices.add(sound);
+        if(cutOff && source != null){
+            lastPlayed.put(source, sound);
+        }
+    }
+
+    /**
+     * Stops the last note of a source
+     */
+    public static void stop(Object source) {
+        NoteSound previous = lastPlayed.remove(source);
+        if(previous != null){
+            previous.stopSound();
+        }
+    }
+
+    private static void releaseFinished(SoundHandler soundHandler) {
+        Iterator<NoteSound> it = voices.iterator();
+        while(it.hasNext()){
+            NoteSound voice = it.next();
+            if(!soundHandler.isPlaying(voice)){
+                it.remove();
+                lastPlayed.values().remove(voice);
+                if(freeSounds.size() < MAX_VOICES){
+                    freeSounds.addLast(voice);
+                }
+            }
+        }
+    }
+
+    // Volume heard by the listener, with the linear falloff the sound engine uses for note sounds
+    private static double loudness(double x, double y, double z, float volume, Vector3d listener) {
+        double range = 16.0D * Math.max(volume, 1.0F);
+        double distance = Math.sqrt(listener.squareDistanceTo(x, y, z));
+        return Math.min(volume, 1.0F) * Math.max(0.0D, 1.0D - distance / range);
+    }
+}
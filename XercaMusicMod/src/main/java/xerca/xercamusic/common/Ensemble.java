@@ -0,0 +1,203 @@
+package xerca.xercamusic.common;
+
+import com.google.common.collect.Lists;
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.network.PacketBuffer;
+import net.minecraft.tileentity.TileEntity;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.vector.Vector3i;
+import net.minecraft.world.World;
+import xerca.xercamusic.common.tile_entity.TileEntityMusicBox;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+/**
+ * Music boxes around a metronome that play together, with the metronome as their conductor.
+ *
+ * The conductor owns the tempo and the beat position. The beat is worked out from the world time, so every member on
+ * the server and on every client plays the same beat at the same tick, however late it was loaded. The whole group is
+ * sent to the clients as a single message.
+ */
+public class Ensemble {
+    // Beats the metronome ticks before the music starts, the same as for the players around it
+    private static final int COUNT_IN = 3;
+
+    private final BlockPos conductor;
+    // The world time the performance was started at, kept when the tempo changes
+    private final long id;
+    private final long startTick;
+    private final int pause;
+    private final List<BlockPos> members;
+    private int lastBeat = -1;
+
+    private Ensemble(BlockPos conductor, long id, long startTick, int pause, List<BlockPos> members) {
+        this.conductor = conductor;
+        this.id = id;
+        this.startTick = startTick;
+        this.pause = Math.max(pause, 1);
+        this.members = members;
+    }
+
+    /**
+     * Starts a performance with the music boxes in range of the conductor that have both music and an instrument
+     *
+     * @return the new ensemble, or null if there is no box to play
+     */
+    @Nullable
+    public static Ensemble gather(World world, BlockPos conductor, Vector3i halfRange, int pause) {
+        BlockPos min = conductor.subtract(halfRange);
+        BlockPos max = conductor.add(halfRange);
+        List<BlockPos> members = Lists.newArrayList();
+        for(int cx = min.getX() >> 4; cx <= max.getX() >> 4; cx++){
+            for(int cz = min.getZ() >> 4; cz <= max.getZ() >> 4; cz++){
+                if(!world.isBlockLoaded(new BlockPos(cx << 4, conductor.getY(), cz << 4))){
+                    continue;
+                }
+                for(TileEntity te : world.getChunk(cx, cz).getTileEntityMap().values()){
+                    BlockPos pos = te.getPos();
+                    if(te instanceof TileEntityMusicBox && ((TileEntityMusicBox) te).canPlay() &&
+                            pos.getX() >= min.getX() && pos.getY() >= min.getY() && pos.getZ() >= min.getZ() &&
+                            pos.getX() <= max.getX() && pos.getY() <= max.getY() && pos.getZ() <= max.getZ()){
+                        members.add(pos.toImmutable());
+                    }
+                }
+            }
+        }
+        if(members.isEmpty()){
+            return null;
+        }
+        long now = world.getGameTime();
+        return new Ensemble(conductor, now, now + (long) COUNT_IN * pause, pause, members);
+    }
+
+    /**
+     * @return the same performance at another tempo, going on from the beat it is at now
+     */
+    public Ensemble withPause(int newPause, long now) {
+        long elapsed = now - startTick;
+        long newStart;
+        if(elapsed < 0){
+            newStart = now + (-elapsed + pause - 1) / pause * newPause;
+        }
+        else{
+            newStart = now - elapsed / pause * newPause;
+        }
+        Ensemble result = new Ensemble(conductor, id, newStart, newPause, members);
+        result.lastBeat = lastBeat;
+        return result;
+    }
+
+    /**
+     * Plays the beat that is due, unless it was played already
+     *
+     * @return false once every member has reached the end of its music
+     */
+    public boolean update(World world) {
+        long elapsed = world.getGameTime() - startTick;
+        if(elapsed < 0){
+            return true;
+        }
+        int beat = (int) (elapsed / pause);
+        if(beat == lastBeat){
+            return true;
+        }
+        lastBeat = beat;
+
+        boolean playing = false;
+        for(BlockPos pos : members){
+            if(!world.isBlockLoaded(pos)){
+                // Catches up with the others when it is loaded again
+                playing = true;
+                continue;
+            }
+            TileEntity te = world.getTileEntity(pos);
+            if(te instanceof TileEntityMusicBox && ((TileEntityMusicBox) te).playBeat(conductor, id, beat, startTick + (long) beat * pause)){
+                playing = true;
+            }
+        }
+        return playing;
+    }
+
+    /**
+     * Hands the members back to their own redstone
+     */
+    public void stop(World world) {
+        for(BlockPos pos : members){
+            if(world.isBlockLoaded(pos)){
+                TileEntity te = world.getTileEntity(pos);
+                if(te instanceof TileEntityMusicBox){
+                    ((TileEntityMusicBox) te).leaveEnsemble(conductor);
+                }
+            }
+        }
+    }
+
+    /**
+     * Carries the beat position over from an older state of the same performance
+     */
+    public void continueFrom(Ensemble old) {
+        if(isSamePerformance(old)){
+            lastBeat = old.lastBeat;
+        }
+    }
+
+    public boolean isSamePerformance(Ensemble other) {
+        return other != null && conductor.equals(other.conductor) && id == other.id;
+    }
+
+    public int getPause() {
+        return pause;
+    }
+
+    public CompoundNBT write(CompoundNBT tag) {
+        tag.putLong("id", id);
+        tag.putLong("start", startTick);
+        tag.putInt("pause", pause);
+        long[] positions = new long[members.size()];
+        for(int i = 0; i < positions.length; i++){
+            positions[i] = members.get(i).toLong();
+        }
+        tag.putLongArray("members", positions);
+        return tag;
+    }
+
+    public static Ensemble read(BlockPos conductor, CompoundNBT tag) {
+        long[] positions = tag.getLongArray("members");
+        List<BlockPos> members = Lists.newArrayListWithCapacity(positions.length);
+        for(long position : positions){
+            members.add(BlockPos.fromLong(position));
+        }
+        return new Ensemble(conductor, tag.getLong("id"), tag.getLong("start"), tag.getInt("pause"), members);
+    }
+
+    /**
+     * Members are written as byte offsets from the conductor, which fit the range of a metronome
+     */
+    public void encode(PacketBuffer buf) {
+        buf.writeVarLong(id);
+        buf.writeVarLong(startTick);
+        buf.writeVarInt(pause);
+        buf.writeVarInt(members.size());
+        for(BlockPos pos : members){
+            buf.writeByte(pos.getX() - conductor.getX());
+            buf.writeByte(pos.getY() - conductor.getY());
+            buf.writeByte(pos.getZ() - conductor.getZ());
+        }
+    }
+
+    public static Ensemble decode(BlockPos conductor, PacketBuffer buf) {
+        long id = buf.readVarLong();
+        long startTick = buf.readVarLong();
+        int pause = buf.readVarInt();
+        int count = buf.readVarInt();
+        if(count < 0 || count > buf.readableBytes() / 3){
+            throw new IndexOutOfBoundsException("Ensemble member count " + count);
+        }
+        List<BlockPos> members = Lists.newArrayListWithCapacity(count);
+        for(int i = 0; i < count; i++){
+            members.add(conductor.add(buf.readByte(), buf.readByte(), buf.readByte()));
+        }
+        return new Ensemble(conductor, id, startTick, pause, members);
+    }
+}
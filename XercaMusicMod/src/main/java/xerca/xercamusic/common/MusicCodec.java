@@ -0,0 +1,161 @@
+package xerca.xercamusic.common;
+
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.network.PacketBuffer;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Compact, versioned encoding of music sheets.
+ *
+ * Most beats of a sheet are rests, so only the notes are stored, each as the number of beats since the previous note
+ * followed by its pitch (1 to 48).
+ *
+ * Layout: format version (byte), length in beats (varint), then (beats since the previous note varint, pitch byte)
+ * pairs until the end of the data.
+ */
+public class MusicCodec {
+    public static final String TAG_NOTES = "notes";
+    public static final String TAG_LEGACY_MUSIC = "music";
+    public static final int MAX_LENGTH = 1024;
+
+    private static final byte FORMAT_VERSION = 1;
+
+    public static byte[] encode(byte[] music, int length) {
+        length = Math.min(length, music.length);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(8 + length / 2);
+        out.write(FORMAT_VERSION);
+        writeVarInt(out, length);
+        int last = 0;
+        for(int i = 0; i < length; i++){
+            if(music[i] > 0 && music[i] <= 48){
+                writeVarInt(out, i - last);
+                out.write(music[i]);
+                last = i;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @return the music as one byte per beat, 0 being a rest
+     * @throws IllegalArgumentException if the data is malformed or longer than maxLength beats
+     */
+    public static byte[] decode(byte[] data, int maxLength) {
+        Reader in = new Reader(data);
+        byte version = in.readByte();
+        if(version != FORMAT_VERSION){
+            throw new IllegalArgumentException("Unknown music format version " + version);
+        }
+        int length = in.readVarInt();
+        if(length < 0 || length > maxLength){
+            throw new IllegalArgumentException("Music length " + length + " is out of range");
+        }
+        byte[] music = new byte[length];
+        int i = 0;
+        boolean first = true;
+        while(in.hasMore()){
+            int delta = in.readVarInt();
+            i += delta;
+            byte pitch = in.readByte();
+            if(delta < 0 || (delta == 0 && !first) || i >= length || pitch <= 0 || pitch > 48){
+                throw new IllegalArgumentException("Invalid note at beat " + i);
+            }
+            music[i] = pitch;
+            first = false;
+        }
+        return music;
+    }
+
+    public static boolean hasMusic(CompoundNBT tag) {
+        return tag != null && (tag.contains(TAG_NOTES) || tag.contains(TAG_LEGACY_MUSIC));
+    }
+
+    /**
+     * Reads music in the compact format, or from the byte per beat array that older versions wrote.
+     */
+    public static byte[] readMusic(CompoundNBT tag) {
+        if(tag.contains(TAG_NOTES)){
+            try {
+                return decode(tag.getByteArray(TAG_NOTES), MAX_LENGTH);
+            } catch (IllegalArgumentException e) {
+                XercaMusic.LOGGER.error("Invalid music data: " + e.getMessage());
+                return new byte[0];
+            }
+        }
+        return tag.getByteArray(TAG_LEGACY_MUSIC);
+    }
+
+    public static void writeMusic(CompoundNBT tag, byte[] music, int length) {
+        tag.putByteArray(TAG_NOTES, encode(music, length));
+        tag.remove(TAG_LEGACY_MUSIC);
+    }
+
+    /**
+     * Rewrites music stored by older versions in the compact format
+     * @return true if the tag was changed
+     */
+    public static boolean migrate(CompoundNBT tag) {
+        if(tag == null || !tag.contains(TAG_LEGACY_MUSIC)){
+            return false;
+        }
+        if(!tag.contains(TAG_NOTES)){
+            byte[] music = tag.getByteArray(TAG_LEGACY_MUSIC);
+            int length = tag.contains("length") ? tag.getInt("length") : music.length;
+            tag.putByteArray(TAG_NOTES, encode(music, Math.min(length, MAX_LENGTH)));
+        }
+        tag.remove(TAG_LEGACY_MUSIC);
+        return true;
+    }
+
+    public static void writeMusic(PacketBuffer buf, byte[] music, int length) {
+        buf.writeByteArray(encode(music, length));
+    }
+
+    public static byte[] readMusic(PacketBuffer buf, int maxLength) {
+        return decode(buf.readByteArray(8 + maxLength * 6), maxLength);
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while((value & -128) != 0){
+            out.write(value & 127 | 128);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static class Reader {
+        private final byte[] data;
+        private int pos = 0;
+
+        private Reader(byte[] data) {
+            this.data = data;
+        }
+
+        private boolean hasMore() {
+            return pos < data.length;
+        }
+
+        private byte readByte() {
+            if(pos >= data.length){
+                throw new IllegalArgumentException("Unexpected end of music data");
+            }
+            return data[pos++];
+        }
+
+        private int readVarInt() {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                if(shift >= 35){
+                    throw new IllegalArgumentException("VarInt too big");
+                }
+                b = readByte();
+                value |= (b & 127) << shift;
+                shift += 7;
+            } while((b & 128) != 0);
+            return value;
+        }
+    }
+}
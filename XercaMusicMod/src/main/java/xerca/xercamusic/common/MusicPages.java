@@ -0,0 +1,260 @@
+package xerca.xercamusic.common;
+
+import com.google.common.collect.Maps;
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.nbt.ListNBT;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.world.World;
+import net.minecraft.world.server.ServerWorld;
+import net.minecraft.world.storage.WorldSavedData;
+import net.minecraftforge.common.util.Constants;
+import net.minecraftforge.event.entity.player.PlayerEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import xerca.xercamusic.common.item.Items;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * World wide store of the notes of music sheets, split into pages.
+ *
+ * A sheet item only carries its id, its length and a version for each of its pages, so its tag stays the same size
+ * however long the music is. Clients fetch the pages they need from here, and an edited sheet only sends the pages
+ * that changed.
+ *
+ * Pages never change once written. An edit gives the sheet a new id that shares the unchanged pages with the old one,
+ * so copies of a sheet are never changed by editing one of them. Each id counts the sheets known to carry it: cloning
+ * a sheet adds one, and an edit takes one away. The count is only a guess, since copies made in creative mode or
+ * sheets moved between dimensions are not seen, so ids that drop to no sheets are only marked with the time and kept.
+ * Pages are never removed here, as a sheet in a chest or an item frame may still point to them.
+ */
+@Mod.EventBusSubscriber(modid = XercaMusic.MODID)
+public class MusicPages extends WorldSavedData {
+    private static final String NAME = XercaMusic.MODID + "_music_pages";
+    public static final String TAG_ID = "sheetId";
+    public static final String TAG_VERSIONS = "pageVersions";
+    public static final int PAGE_LENGTH = 240;
+    public static final int MAX_PAGES = 16;
+    public static final int MAX_LENGTH = PAGE_LENGTH * MAX_PAGES;
+
+    private final Map<UUID, Sheet> sheets = Maps.newHashMap();
+    private ServerWorld overworld;
+
+    public MusicPages() {
+        super(NAME);
+    }
+
+    public static MusicPages get(MinecraftServer server) {
+        ServerWorld overworld = server.getWorld(World.OVERWORLD);
+        MusicPages pages = overworld.getSavedData().getOrCreate(MusicPages::new, NAME);
+        pages.overworld = overworld;
+        return pages;
+    }
+
+    public static int getPageCount(int length) {
+        return Math.min(MAX_PAGES, (Math.max(length, 0) + PAGE_LENGTH - 1) / PAGE_LENGTH);
+    }
+
+    public static int getPageCount(CompoundNBT tag) {
+        return getPageCount(tag.getInt("length"));
+    }
+
+    @Nullable
+    public static UUID getId(CompoundNBT tag) {
+        return tag != null && tag.hasUniqueId(TAG_ID) ? tag.getUniqueId(TAG_ID) : null;
+    }
+
+    public static int getVersion(CompoundNBT tag, int page) {
+        int[] versions = tag.getIntArray(TAG_VERSIONS);
+        return page >= 0 && page < versions.length ? versions[page] : 0;
+    }
+
+    @Nullable
+    public Page getPage(UUID id, int page) {
+        Sheet sheet = sheets.get(id);
+        return sheet != null && page >= 0 && page < sheet.pages.length ? sheet.pages[page] : null;
+    }
+
+    /**
+     * Writes the pages of a sheet to its tag under a new id, which takes the unchanged pages from the old one
+     *
+     * @param pages the notes of the changed pages, null for the pages that are unchanged
+     */
+    public void write(CompoundNBT tag, int length, byte[][] pages) {
+        UUID oldId = getId(tag);
+        Sheet old = oldId == null ? null : sheets.get(oldId);
+        UUID id = UUID.randomUUID();
+        Sheet sheet = new Sheet();
+        int pageCount = getPageCount(length);
+        int[] versions = Arrays.copyOf(tag.getIntArray(TAG_VERSIONS), pageCount);
+        for(int i = 0; i < pageCount; i++){
+            if(i < pages.length && pages[i] != null){
+                versions[i]++;
+                sheet.pages[i] = new Page(versions[i], MusicCodec.encode(pages[i], pages[i].length));
+            }
+            else if(old != null){
+                sheet.pages[i] = old.pages[i];
+            }
+        }
+        sheets.put(id, sheet);
+        tag.putUniqueId(TAG_ID, id);
+        tag.putIntArray(TAG_VERSIONS, versions);
+        tag.putInt("length", Math.min(length, MAX_LENGTH));
+        if(oldId != null){
+            release(oldId);
+        }
+        markDirty();
+    }
+
+    /**
+     * Counts one more sheet carrying the id
+     */
+    public void retain(UUID id) {
+        Sheet sheet = sheets.get(id);
+        if(sheet != null){
+            sheet.refs++;
+            sheet.orphanedAt = -1;
+            markDirty();
+        }
+    }
+
+    /**
+     * Counts one less sheet carrying the id. The pages are kept even when no sheet is known to carry it any more.
+     */
+    public void release(UUID id) {
+        Sheet sheet = sheets.get(id);
+        if(sheet != null && sheet.refs > 0){
+            sheet.refs--;
+            if(sheet.refs == 0){
+                sheet.orphanedAt = getTime();
+            }
+            markDirty();
+        }
+    }
+
+    /**
+     * Called when a sheet with the id is seen, so an id that wasn't counted right is counted again
+     */
+    public void touch(@Nullable UUID id) {
+        Sheet sheet = id == null ? null : sheets.get(id);
+        if(sheet != null && sheet.refs <= 0){
+            sheet.refs = 1;
+            sheet.orphanedAt = -1;
+            markDirty();
+        }
+    }
+
+    private long getTime() {
+        return overworld != null ? overworld.getGameTime() : 0;
+    }
+
+    /**
+     * Moves music that was kept in the sheet tag by older versions into pages.
+     * @return true if the tag was changed
+     */
+    public boolean migrate(CompoundNBT tag) {
+        if(!MusicCodec.hasMusic(tag)){
+            return false;
+        }
+        byte[] music = MusicCodec.readMusic(tag);
+        int length = Math.min(tag.contains("length") ? tag.getInt("length") : music.length, music.length);
+        byte[][] pages = new byte[getPageCount(length)][];
+        for(int i = 0; i < pages.length; i++){
+            pages[i] = Arrays.copyOfRange(music, i * PAGE_LENGTH, Math.min(length, (i + 1) * PAGE_LENGTH));
+        }
+        write(tag, length, pages);
+        tag.remove(MusicCodec.TAG_NOTES);
+        tag.remove(MusicCodec.TAG_LEGACY_MUSIC);
+        return true;
+    }
+
+    @Override
+    public void read(CompoundNBT nbt) {
+        sheets.clear();
+        ListNBT sheetList = nbt.getList("sheets", Constants.NBT.TAG_COMPOUND);
+        for(int i = 0; i < sheetList.size(); i++){
+            CompoundNBT sheetTag = sheetList.getCompound(i);
+            Sheet sheet = new Sheet();
+            // Older saves didn't count references
+            sheet.refs = sheetTag.contains("refs") ? sheetTag.getInt("refs") : 1;
+            sheet.orphanedAt = sheetTag.contains("orphaned") ? sheetTag.getLong("orphaned") : -1;
+            ListNBT pageList = sheetTag.getList("pages", Constants.NBT.TAG_COMPOUND);
+            for(int j = 0; j < pageList.size(); j++){
+                CompoundNBT pageTag = pageList.getCompound(j);
+                int page = pageTag.getInt("page");
+                if(page >= 0 && page < MAX_PAGES){
+                    sheet.pages[page] = new Page(pageTag.getInt("v"), pageTag.getByteArray("notes"));
+                }
+            }
+            sheets.put(sheetTag.getUniqueId("id"), sheet);
+        }
+    }
+
+    @Override
+    public CompoundNBT write(CompoundNBT compound) {
+        ListNBT sheetList = new ListNBT();
+        for(Map.Entry<UUID, Sheet> sheet : sheets.entrySet()){
+            ListNBT pageList = new ListNBT();
+            Page[] pages = sheet.getValue().pages;
+            for(int i = 0; i < pages.length; i++){
+                if(pages[i] != null){
+                    CompoundNBT pageTag = new CompoundNBT();
+                    pageTag.putInt("page", i);
+                    pageTag.putInt("v", pages[i].version);
+                    pageTag.putByteArray("notes", pages[i].data);
+                    pageList.add(pageTag);
+                }
+            }
+            CompoundNBT sheetTag = new CompoundNBT();
+            sheetTag.putUniqueId("id", sheet.getKey());
+            sheetTag.putInt("refs", sheet.getValue().refs);
+            if(sheet.getValue().refs <= 0){
+                sheetTag.putLong("orphaned", sheet.getValue().orphanedAt);
+            }
+            sheetTag.put("pages", pageList);
+            sheetList.add(sheetTag);
+        }
+        compound.put("sheets", sheetList);
+        return compound;
+    }
+
+    // Sheets cloned in a crafting table carry the id of the original too
+    @SubscribeEvent
+    public static void onItemCrafted(PlayerEvent.ItemCraftedEvent event) {
+        UUID id = getId(event.getCrafting().getTag());
+        if(id != null && event.getCrafting().getItem() == Items.MUSIC_SHEET && event.getPlayer().getServer() != null){
+            get(event.getPlayer().getServer()).retain(id);
+        }
+    }
+
+    private static class Sheet {
+        private final Page[] pages = new Page[MAX_PAGES];
+        private int refs = 1;
+        // The world time the last sheet known to carry the id was gone, for a sweep over the stored items
+        private long orphanedAt = -1;
+    }
+
+    public static class Page {
+        private final int version;
+        private final byte[] data;
+
+        private Page(int version, byte[] data) {
+            this.version = version;
+            this.data = data;
+        }
+
+        public int getVersion() {
+            return version;
+        }
+
+        /**
+         * The notes in {@link MusicCodec} format
+         */
+        public byte[] getData() {
+            return data;
+        }
+    }
+}
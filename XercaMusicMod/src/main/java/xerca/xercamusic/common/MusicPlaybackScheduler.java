@@ -0,0 +1,150 @@
+package xerca.xercamusic.common;
+
+import com.google.common.collect.Lists;
+import net.minecraft.world.IWorld;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.world.WorldEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.LogicalSide;
+import net.minecraftforge.fml.common.Mod;
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Plays the notes of every music spirit and music box of a world.
+ *
+ * Performances sit in a timing wheel in the slot of the tick their next note is due, so each tick only looks at the
+ * performances that have a note to play in it, and a performance between two notes costs nothing.
+ */
+@Mod.EventBusSubscriber(modid = XercaMusic.MODID)
+public class MusicPlaybackScheduler {
+    private static final int WHEEL_SIZE = 64;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final Map<IWorld, MusicPlaybackScheduler> schedulers = new WeakHashMap<>();
+
+    private final List<List<Entry>> wheel = Lists.newArrayListWithCapacity(WHEEL_SIZE);
+    private final Map<Performance, Entry> entries = new IdentityHashMap<>();
+    private long currentTick = 0;
+
+    public interface Performance {
+        /**
+         * Plays the note that is due now
+         * @return ticks until the next note, or 0 or less if the performance is over
+         */
+        int playNext();
+    }
+
+    private MusicPlaybackScheduler() {
+        for(int i = 0; i < WHEEL_SIZE; i++){
+            wheel.add(Lists.newArrayList());
+        }
+    }
+
+    public static MusicPlaybackScheduler get(IWorld world) {
+        synchronized (schedulers) {
+            return schedulers.computeIfAbsent(world, w -> new MusicPlaybackScheduler());
+        }
+    }
+
+    /**
+     * Plays the first note of a performance right away and schedules the rest
+     */
+    public void start(Performance performance) {
+        cancel(performance);
+        int next = performance.playNext();
+        if(next > 0){
+            schedule(performance, next);
+        }
+    }
+
+    /**
+     * Schedules the next note of a performance, replacing the one it had scheduled before
+     */
+    public void schedule(Performance performance, int delay) {
+        cancel(performance);
+        Entry entry = new Entry(performance, currentTick + Math.max(delay, 1));
+        entries.put(performance, entry);
+        wheel.get((int) (entry.dueTick & WHEEL_MASK)).add(entry);
+    }
+
+    public void cancel(Performance performance) {
+        Entry old = entries.remove(performance);
+        if(old != null){
+            old.cancelled = true;
+        }
+    }
+
+    private void tick() {
+        currentTick++;
+        List<Entry> slot = wheel.get((int) (currentTick & WHEEL_MASK));
+        if(slot.isEmpty()){
+            return;
+        }
+
+        // Entries due in a later turn of the wheel stay where they are
+        List<Entry> due = Lists.newArrayList();
+        Iterator<Entry> it = slot.iterator();
+        while(it.hasNext()){
+            Entry entry = it.next();
+            if(entry.cancelled){
+                it.remove();
+            }
+            else if(entry.dueTick <= currentTick){
+                it.remove();
+                entries.remove(entry.performance);
+                due.add(entry);
+            }
+        }
+
+        for(Entry entry : due){
+            int next = entry.performance.playNext();
+            if(next > 0 && !entries.containsKey(entry.performance)){
+                schedule(entry.performance, next);
+            }
+        }
+    }
+
+    /**
+     * Plays the notes due in this tick of a world. Server worlds are ticked here, the client world by the client tick.
+     */
+    public static void tick(IWorld world) {
+        MusicPlaybackScheduler scheduler;
+        synchronized (schedulers) {
+            scheduler = schedulers.get(world);
+        }
+        if(scheduler != null){
+            scheduler.tick();
+        }
+    }
+
+    // The client world is ticked by ClientPlaybackTicker instead, which skips paused ticks
+    @SubscribeEvent
+    public static void onWorldTick(TickEvent.WorldTickEvent event) {
+        if(event.phase != TickEvent.Phase.END || event.side != LogicalSide.SERVER){
+            return;
+        }
+        tick(event.world);
+    }
+
+    @SubscribeEvent
+    public static void onWorldUnload(WorldEvent.Unload event) {
+        synchronized (schedulers) {
+            schedulers.remove(event.getWorld());
+        }
+    }
+
+    private static class Entry {
+        private final Performance performance;
+        private final long dueTick;
+        private boolean cancelled = false;
+
+        private Entry(Performance performance, long dueTick) {
+            this.performance = performance;
+            this.dueTick = dueTick;
+        }
+    }
+}
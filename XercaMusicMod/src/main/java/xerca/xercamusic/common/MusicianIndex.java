@@ -0,0 +1,88 @@
+package xerca.xercamusic.common;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import net.minecraft.entity.player.PlayerEntity;
+import net.minecraft.inventory.EquipmentSlotType;
+import net.minecraft.item.ItemStack;
+import net.minecraft.util.math.AxisAlignedBB;
+import net.minecraft.world.World;
+import net.minecraftforge.event.entity.living.LivingEquipmentChangeEvent;
+import net.minecraftforge.event.entity.player.PlayerEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import xerca.xercamusic.common.item.ItemInstrument;
+import xerca.xercamusic.common.item.ItemMusicSheet;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Server side index of the players who are ready to play along with a metronome: an instrument in the main hand and a
+ * music sheet in the off hand. Players are grouped by the tempo of their sheet and the index is kept up to date by
+ * equipment change events, so a metronome only looks at the players that play at its tempo.
+ */
+@Mod.EventBusSubscriber(modid = XercaMusic.MODID)
+public class MusicianIndex {
+    private static final Map<Integer, Set<PlayerEntity>> musiciansByPause = Maps.newHashMap();
+    private static final Map<PlayerEntity, Integer> pauses = Maps.newHashMap();
+
+    /**
+     * @return ready musicians in the given area whose sheets have the given pause between notes
+     */
+    public static List<PlayerEntity> getMusicians(World world, int pause, AxisAlignedBB area) {
+        List<PlayerEntity> result = Lists.newArrayList();
+        Set<PlayerEntity> musicians = musiciansByPause.get(pause);
+        if(musicians != null){
+            for(PlayerEntity player : musicians){
+                if(player.world == world && player.isAlive() && area.contains(player.getPositionVec())){
+                    result.add(player);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static void update(PlayerEntity player) {
+        remove(player);
+        ItemStack main = player.getHeldItemMainhand();
+        ItemStack off = player.getHeldItemOffhand();
+        if(main.getItem() instanceof ItemInstrument && off.getItem() instanceof ItemMusicSheet && off.hasTag()){
+            int pause = off.getTag().getInt("pause");
+            pauses.put(player, pause);
+            musiciansByPause.computeIfAbsent(pause, p -> Sets.newHashSet()).add(player);
+        }
+    }
+
+    private static void remove(PlayerEntity player) {
+        Integer pause = pauses.remove(player);
+        if(pause != null){
+            Set<PlayerEntity> musicians = musiciansByPause.get(pause);
+            musicians.remove(player);
+            if(musicians.isEmpty()){
+                musiciansByPause.remove(pause);
+            }
+        }
+    }
+
+    // Also fired when the sheet in the hand is edited, since the stacks are compared with their tags
+    @SubscribeEvent
+    public static void onEquipmentChange(LivingEquipmentChangeEvent event) {
+        if(event.getEntityLiving() instanceof PlayerEntity && !event.getEntityLiving().world.isRemote
+                && (event.getSlot() == EquipmentSlotType.MAINHAND || event.getSlot() == EquipmentSlotType.OFFHAND)){
+            update((PlayerEntity) event.getEntityLiving());
+        }
+    }
+
+    @SubscribeEvent
+    public static void onPlayerClone(PlayerEvent.Clone event) {
+        remove(event.getOriginal());
+    }
+
+    @SubscribeEvent
+    public static void onPlayerLogout(PlayerEvent.PlayerLoggedOutEvent event) {
+        remove(event.getPlayer());
+    }
+}
@@ -0,0 +1,98 @@
+package xerca.xercamusic.common;
+
+import com.google.common.collect.Maps;
+import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.entity.player.PlayerEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import net.minecraftforge.fml.network.PacketDistributor;
+import xerca.xercamusic.common.item.ItemInstrument;
+import xerca.xercamusic.common.packets.SingleNoteClientPacket;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Sends the notes players play on their instruments to the players around them.
+ *
+ * The notes a player plays in a tick are gathered and sent once at the end of the tick, as a single packet with the
+ * notes as a bit set. Each player may only play a limited number of notes per second, the rest are dropped.
+ */
+@Mod.EventBusSubscriber(modid = XercaMusic.MODID)
+public class NoteBroadcaster {
+    private static final float MAX_NOTES_PER_SECOND = 40.0f;
+    private static final float MAX_BURST = 40.0f;
+
+    private static final Map<UUID, Pending> pending = Maps.newHashMap();
+    private static final Map<UUID, Float> tokens = Maps.newHashMap();
+
+    public static void queue(ServerPlayerEntity player, ItemInstrument instrument, int note) {
+        UUID id = player.getUniqueID();
+        float available = tokens.getOrDefault(id, MAX_BURST);
+        if(available < 1.0f){
+            return;
+        }
+        tokens.put(id, available - 1.0f);
+
+        Pending notes = pending.get(id);
+        if(notes != null && notes.instrument != instrument){
+            // Notes of another instrument can't share the packet
+            send(notes);
+            notes = null;
+        }
+        if(notes == null){
+            notes = new Pending(player, instrument);
+            pending.put(id, notes);
+        }
+        notes.notes |= 1L << note;
+    }
+
+    private static void send(Pending notes) {
+        SingleNoteClientPacket packet = new SingleNoteClientPacket(notes.notes, notes.instrument, notes.player);
+        XercaMusic.NETWORK_HANDLER.send(PacketDistributor.TRACKING_ENTITY.with(() -> notes.player), packet);
+    }
+
+    @SubscribeEvent
+    public static void onServerTick(TickEvent.ServerTickEvent event) {
+        if(event.phase != TickEvent.Phase.END){
+            return;
+        }
+        for(Pending notes : pending.values()){
+            if(notes.player.isAlive()){
+                send(notes);
+            }
+        }
+        pending.clear();
+
+        Iterator<Map.Entry<UUID, Float>> it = tokens.entrySet().iterator();
+        while(it.hasNext()){
+            Map.Entry<UUID, Float> entry = it.next();
+            float refilled = entry.getValue() + MAX_NOTES_PER_SECOND / 20.0f;
+            if(refilled >= MAX_BURST){
+                it.remove();
+            }
+            else{
+                entry.setValue(refilled);
+            }
+        }
+    }
+
+    @SubscribeEvent
+    public static void onPlayerLogout(PlayerEvent.PlayerLoggedOutEvent event) {
+        pending.remove(event.getPlayer().getUniqueID());
+        tokens.remove(event.getPlayer().getUniqueID());
+    }
+
+    private static class Pending {
+        private final ServerPlayerEntity player;
+        private final ItemInstrument instrument;
+        private long notes = 0;
+
+        private Pending(ServerPlayerEntity player, ItemInstrument instrument) {
+            this.player = player;
+            this.instrument = instrument;
+        }
+    }
+}
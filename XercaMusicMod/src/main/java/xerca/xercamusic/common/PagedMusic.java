@@ -0,0 +1,55 @@
+package xerca.xercamusic.common;
+
+import net.minecraft.nbt.CompoundNBT;
+
+/**
+ * The notes of a music sheet as they are played on the client. Pages are fetched as the playback gets close to them,
+ * and the beats of a page that hasn't arrived yet are rests.
+ */
+public class PagedMusic {
+    // How many beats before the end of a page the next one is asked for
+    private static final int LOOKAHEAD = 48;
+
+    private final CompoundNBT tag;
+    // Sheets that weren't moved to pages yet still have all of their notes in the tag
+    private final byte[] inlineMusic;
+    private final byte[][] pages;
+
+    public PagedMusic(CompoundNBT tag) {
+        this.tag = tag;
+        this.inlineMusic = MusicCodec.hasMusic(tag) ? MusicCodec.readMusic(tag) : null;
+        this.pages = new byte[MusicPages.getPageCount(tag)][];
+    }
+
+    /**
+     * Asks for the first page before the playback starts
+     */
+    public void preload() {
+        if(inlineMusic == null && pages.length > 0){
+            getPage(0);
+        }
+    }
+
+    public byte getNote(int beat) {
+        if(inlineMusic != null){
+            return beat >= 0 && beat < inlineMusic.length ? inlineMusic[beat] : 0;
+        }
+        int page = beat / MusicPages.PAGE_LENGTH;
+        int index = beat % MusicPages.PAGE_LENGTH;
+        if(beat < 0 || page >= pages.length){
+            return 0;
+        }
+        if(index >= MusicPages.PAGE_LENGTH - LOOKAHEAD && page + 1 < pages.length){
+            getPage(page + 1);
+        }
+        byte[] notes = getPage(page);
+        return notes != null && index < notes.length ? notes[index] : 0;
+    }
+
+    private byte[] getPage(int page) {
+        if(pages[page] == null){
+            pages[page] = XercaMusic.proxy.getMusicPage(tag, page);
+        }
+        return pages[page];
+    }
+}
@@ -0,0 +1,65 @@
+package xerca.xercamusic.common;
+
+import com.google.common.collect.Maps;
+import net.minecraft.entity.player.PlayerEntity;
+import net.minecraftforge.event.entity.player.PlayerEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import xerca.xercamusic.common.entity.EntityMusicSpirit;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Server side registry of the music each player is playing, either with an instrument in hand or on an instrument
+ * block. Spirits add themselves when they join a world and remove themselves when they leave it.
+ */
+@Mod.EventBusSubscriber(modid = XercaMusic.MODID)
+public class PerformanceRegistry {
+    private static final Map<UUID, EntityMusicSpirit> performances = Maps.newHashMap();
+
+    @Nullable
+    public static EntityMusicSpirit get(PlayerEntity player) {
+        EntityMusicSpirit spirit = performances.get(player.getUniqueID());
+        if(spirit != null && !spirit.isAlive()){
+            performances.remove(player.getUniqueID());
+            return null;
+        }
+        return spirit;
+    }
+
+    public static boolean isPlaying(PlayerEntity player) {
+        return get(player) != null;
+    }
+
+    public static void register(EntityMusicSpirit spirit) {
+        EntityMusicSpirit old = performances.put(spirit.getBody().getUniqueID(), spirit);
+        if(old != null && old != spirit){
+            old.setPlaying(false);
+        }
+    }
+
+    public static void unregister(EntityMusicSpirit spirit) {
+        if(spirit.getBody() != null){
+            performances.remove(spirit.getBody().getUniqueID(), spirit);
+        }
+    }
+
+    private static void stop(PlayerEntity player) {
+        EntityMusicSpirit spirit = performances.remove(player.getUniqueID());
+        if(spirit != null){
+            spirit.setPlaying(false);
+        }
+    }
+
+    @SubscribeEvent
+    public static void onPlayerLogout(PlayerEvent.PlayerLoggedOutEvent event) {
+        stop(event.getPlayer());
+    }
+
+    @SubscribeEvent
+    public static void onPlayerChangedDimension(PlayerEvent.PlayerChangedDimensionEvent event) {
+        stop(event.getPlayer());
+    }
+}
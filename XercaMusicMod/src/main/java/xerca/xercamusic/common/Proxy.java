@@ -1,8 +1,8 @@
 package xerca.xercamusic.common;
 
+import net.minecraft.nbt.CompoundNBT;
 import net.minecraft.util.SoundCategory;
 import net.minecraft.util.SoundEvent;
-import xerca.xercamusic.client.NoteSound;
 import xerca.xercamusic.common.item.ItemInstrument;
 
 public interface Proxy {
@@ -11,9 +11,20 @@ public interface Proxy {
 
     void init();
 
-    NoteSound playNote(SoundEvent event, double posX, double posY, double posZ);
+    void playNote(SoundEvent event, double posX, double posY, double posZ, Object source, boolean cutOff);
 
-    NoteSound playNote(SoundEvent event, double posX, double posY, double posZ, SoundCategory category, float volume, float pitch);
+    void playNote(SoundEvent event, double posX, double posY, double posZ, SoundCategory category, float volume, float pitch);
+
+    void playNote(SoundEvent event, double posX, double posY, double posZ, SoundCategory category, float volume, float pitch, Object source, boolean cutOff);
+
+    /**
+     * Runs a note at the time of its beat, given in world ticks
+     */
+    void scheduleNote(double tick, Runnable note);
+
+    void preloadInstrument(ItemInstrument instrument);
+
+    byte[] getMusicPage(CompoundNBT sheet, int page);
 
     void endMusic(int spiritID, int playerID);
 
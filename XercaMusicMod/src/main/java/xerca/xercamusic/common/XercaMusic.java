@@ -42,7 +42,7 @@ public class XercaMusic
     public static final Logger LOGGER = LogManager.getLogger();
     public static Proxy proxy = DistExecutor.runForDist(() -> ClientProxy::new, () -> ServerProxy::new);
 
-    private static final String PROTOCOL_VERSION = Integer.toString(1);
+    private static final String PROTOCOL_VERSION = Integer.toString(5);
     public static final SimpleChannel NETWORK_HANDLER = NetworkRegistry.ChannelBuilder
             .named(new ResourceLocation(MODID, "main_channel"))
             .clientAcceptedVersions(PROTOCOL_VERSION::equals)
@@ -57,7 +57,10 @@ public class XercaMusic
         NETWORK_HANDLER.registerMessage(msg_id++, MusicEndedPacket.class, MusicEndedPacket::encode, MusicEndedPacket::decode, MusicEndedPacketHandler::handle);
         NETWORK_HANDLER.registerMessage(msg_id++, MusicBoxUpdatePacket.class, MusicBoxUpdatePacket::encode, MusicBoxUpdatePacket::decode, MusicBoxUpdatePacketHandler::handle);
         NETWORK_HANDLER.registerMessage(msg_id++, SingleNotePacket.class, SingleNotePacket::encode, SingleNotePacket::decode, SingleNotePacketHandler::handle);
-        NETWORK_HANDLER.registerMessage(msg_id, SingleNoteClientPacket.class, SingleNoteClientPacket::encode, SingleNoteClientPacket::decode, SingleNoteClientPacketHandler::handle);
+        NETWORK_HANDLER.registerMessage(msg_id++, SingleNoteClientPacket.class, SingleNoteClientPacket::encode, SingleNoteClientPacket::decode, SingleNoteClientPacketHandler::handle);
+        NETWORK_HANDLER.registerMessage(msg_id++, MusicPageRequestPacket.class, MusicPageRequestPacket::encode, MusicPageRequestPacket::decode, MusicPageRequestPacketHandler::handle);
+        NETWORK_HANDLER.registerMessage(msg_id++, MusicPagePacket.class, MusicPagePacket::encode, MusicPagePacket::decode, MusicPagePacketHandler::handle);
+        NETWORK_HANDLER.registerMessage(msg_id, EnsembleStatePacket.class, EnsembleStatePacket::encode, EnsembleStatePacket::decode, EnsembleStatePacketHandler::handle);
     }
 
     public XercaMusic() {
@@ -12,13 +12,12 @@ import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.BlockRayTraceResult;
 import net.minecraft.util.math.vector.Vector3d;
 import net.minecraft.world.World;
+import xerca.xercamusic.common.PerformanceRegistry;
 import xerca.xercamusic.common.XercaMusic;
 import xerca.xercamusic.common.entity.EntityMusicSpirit;
 import xerca.xercamusic.common.item.ItemInstrument;
 import xerca.xercamusic.common.item.ItemMusicSheet;
 
-import java.util.List;
-
 public abstract class BlockInstrument extends Block {
     public BlockInstrument(Properties properties) {
         super(properties);
@@ -47,12 +46,15 @@ public abstract class BlockInstrument extends Block {
     }
 
     private void playMusic(World worldIn, PlayerEntity playerIn, boolean canStop, BlockPos pos){
-        List<EntityMusicSpirit> musicSpirits = worldIn.getEntitiesWithinAABB(EntityMusicSpirit.class, playerIn.getBoundingBox().grow(3.0), entity -> entity.getBody().isEntityEqual(playerIn));
-        if(musicSpirits.size() == 0){
+        if(worldIn.isRemote){
+            return;
+        }
+        EntityMusicSpirit musicSpirit = PerformanceRegistry.get(playerIn);
+        if(musicSpirit == null){
             worldIn.addEntity(new EntityMusicSpirit(worldIn, playerIn, pos, getItemInstrument()));
         }
         else if(canStop){
-            musicSpirits.forEach(spirit -> spirit.setPlaying(false));
+            musicSpirit.setPlaying(false);
         }
     }
 }
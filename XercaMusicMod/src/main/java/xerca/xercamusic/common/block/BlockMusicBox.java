@@ -22,17 +22,20 @@ import net.minecraft.world.IBlockReader;
 import net.minecraft.world.IWorld;
 import net.minecraft.world.IWorldReader;
 import net.minecraft.world.World;
+import net.minecraft.world.server.ServerWorld;
 import xerca.xercamusic.common.item.ItemInstrument;
 import xerca.xercamusic.common.item.Items;
 import xerca.xercamusic.common.tile_entity.TileEntityMusicBox;
 
 import javax.annotation.Nonnull;
+import java.util.Random;
 
 public class BlockMusicBox extends HorizontalBlock {
     public static final BooleanProperty POWERED = BlockStateProperties.POWERED;
     public static final BooleanProperty POWERING = BooleanProperty.create("powering");
     public static final BooleanProperty HAS_MUSIC = BooleanProperty.create("has_music");
     public static final BooleanProperty HAS_INSTRUMENT = BooleanProperty.create("has_instrument");
+    public static final int PULSE_LENGTH = 20;
 
     public BlockMusicBox() {
         super(Properties.create(Material.WOOD).hardnessAndResistance(2.f, 6.f).sound(SoundType.WOOD));
@@ -56,10 +59,31 @@ public class BlockMusicBox extends HorizontalBlock {
             }
             if (powered != state.get(POWERED)) {
                 worldIn.setBlockState(pos, state.with(POWERED, powered), 2);
+                if (powered) {
+                    // Block events reach the clients too, so the box starts playing on both sides at the same tick
+                    worldIn.addBlockEvent(pos, this, 0, 0);
+                }
             }
         }
     }
 
+    @Override
+    public boolean eventReceived(BlockState state, World worldIn, BlockPos pos, int id, int param) {
+        TileEntity tileentity = worldIn.getTileEntity(pos);
+        if (tileentity instanceof TileEntityMusicBox) {
+            ((TileEntityMusicBox) tileentity).onPowered();
+        }
+        return true;
+    }
+
+    // Ends the output pulse started when the music finished
+    @Override
+    public void tick(BlockState state, ServerWorld worldIn, BlockPos pos, Random rand) {
+        if (state.get(POWERING)) {
+            worldIn.setBlockState(pos, state.with(POWERING, false));
+        }
+    }
+
     private void ejectItem(World world, BlockPos pos, BlockState state, boolean isMusic, boolean isBreaking) {
         if (!world.isRemote) {
             TileEntity tileentity = world.getTileEntity(pos);
@@ -21,7 +21,7 @@ public class Entities {
         @SubscribeEvent
         public static void registerEntities(final RegistryEvent.Register<EntityType<?>> event) {
             final EntityType<EntityMusicSpirit> musicSpiritEntityType = build("music_spirit",
-                    EntityType.Builder.<EntityMusicSpirit>create((EntityMusicSpirit::new), EntityClassification.MISC).setCustomClientFactory(EntityMusicSpirit::new).size(0.25f, 0.25f).setUpdateInterval(10)
+                    EntityType.Builder.<EntityMusicSpirit>create((EntityMusicSpirit::new), EntityClassification.MISC).setCustomClientFactory(EntityMusicSpirit::new).size(0.25f, 0.25f).setUpdateInterval(10).disableSerialization()
             );
             event.getRegistry().register(musicSpiritEntityType);
         }
@@ -15,22 +15,23 @@ import net.minecraft.world.World;
 import net.minecraftforge.fml.common.registry.IEntityAdditionalSpawnData;
 import net.minecraftforge.fml.network.FMLPlayMessages;
 import net.minecraftforge.fml.network.NetworkHooks;
-import xerca.xercamusic.client.NoteSound;
+import xerca.xercamusic.common.MusicPlaybackScheduler;
+import xerca.xercamusic.common.PagedMusic;
+import xerca.xercamusic.common.PerformanceRegistry;
 import xerca.xercamusic.common.XercaMusic;
 import xerca.xercamusic.common.block.BlockInstrument;
 import xerca.xercamusic.common.block.Blocks;
 import xerca.xercamusic.common.item.ItemInstrument;
 import xerca.xercamusic.common.item.Items;
 
-public class EntityMusicSpirit extends Entity implements IEntityAdditionalSpawnData {
+public class EntityMusicSpirit extends Entity implements IEntityAdditionalSpawnData, MusicPlaybackScheduler.Performance {
     private PlayerEntity body;
     private ItemStack note;
     private ItemInstrument instrument;
-    private byte[] music;
+    private PagedMusic music;
     private int mLength;
     private int mTime;
     private byte mPause;
-    private NoteSound lastPlayed = null;
     private boolean isPlaying = true;
     private BlockInstrument blockInstrument = null;
     private BlockPos blockInsPos = null;
@@ -46,9 +47,8 @@ public class EntityMusicSpirit extends Entity implements IEntityAdditionalSpawnD
         setNoteFromBody();
         this.mTime = 0;
         this.setPosition(body.getPosX(), body.getPosY(), body.getPosZ());
-        if (note.hasTag() && note.getTag().contains("music")) {
+        if (note.hasTag()) {
             CompoundNBT comp = note.getTag();
-            music = comp.getByteArray("music");
             mLength = comp.getInt("length");
             mPause = comp.getByte("pause");
         }
@@ -107,28 +107,16 @@ public class EntityMusicSpirit extends Entity implements IEntityAdditionalSpawnD
         }
     }
 
+    // Spirits are not saved with the chunk (see Entities), they only live as long as their player keeps playing.
+    // Spirits saved by older versions load without a body and remove themselves on their first tick.
     @Override
     protected void readAdditional(CompoundNBT tagCompound) {
-        this.music = tagCompound.getByteArray("music");
-        this.mLength = tagCompound.getInt("length");
-        this.mPause = tagCompound.getByte("pause");
-        this.isPlaying = tagCompound.getBoolean("playing");
-        if(tagCompound.contains("bX") && tagCompound.contains("bY") && tagCompound.contains("bZ")){
-            setBlockPosAndInstrument(new BlockPos(tagCompound.getInt("bX"), tagCompound.getInt("bY"), tagCompound.getInt("bZ")));
-        }
+
     }
 
     @Override
     protected void writeAdditional(CompoundNBT tagCompound) {
-        tagCompound.putByteArray("music", this.music);
-        tagCompound.putInt("length", mLength);
-        tagCompound.putByte("pause", mPause);
-        tagCompound.putBoolean("playing", isPlaying);
-        if(blockInstrument != null && blockInsPos != null){
-            tagCompound.putInt("bX", blockInsPos.getX());
-            tagCompound.putInt("bY", blockInsPos.getY());
-            tagCompound.putInt("bZ", blockInsPos.getZ());
-        }
+
     }
 
     @Override
@@ -176,12 +164,37 @@ public class EntityMusicSpirit extends Entity implements IEntityAdditionalSpawnD
             this.note = body.getHeldItemOffhand();
             this.setPosition(body.getPosX(), body.getPosY(), body.getPosZ());
         }
-        if (note.hasTag() && note.getTag().contains("music")) {
+        XercaMusic.proxy.preloadInstrument(instrument);
+        if (note.hasTag()) {
             CompoundNBT comp = note.getTag();
-            music = comp.getByteArray("music");
+            music = new PagedMusic(comp);
+            music.preload();
             mLength = comp.getInt("length");
             mPause = comp.getByte("pause");
         }
+
+        if(mPause == 0){
+            System.err.println("EntityMusicSpirit mPause is 0! THIS SHOULD NOT HAPPEN!");
+        }
+        else{
+            MusicPlaybackScheduler.get(world).schedule(this, mPause);
+        }
+    }
+
+    @Override
+    public void onAddedToWorld() {
+        super.onAddedToWorld();
+        if(!world.isRemote && body != null){
+            PerformanceRegistry.register(this);
+        }
+    }
+
+    @Override
+    public void onRemovedFromWorld() {
+        super.onRemovedFromWorld();
+        if(!world.isRemote){
+            PerformanceRegistry.unregister(this);
+        }
     }
 
     @Override
@@ -219,28 +232,32 @@ public class EntityMusicSpirit extends Entity implements IEntityAdditionalSpawnD
                 this.setPosition(body.getPosX(), body.getPosY(), body.getPosZ());
             }
         }
-        if (this.world.isRemote) {
-            if(mPause == 0){
-                System.err.println("EntityMusicSpirit mPause is 0! THIS SHOULD NOT HAPPEN!");
-                return;
-            }
-            if (this.ticksExisted % mPause == 0) {
-                if (mTime == mLength) {
-                    XercaMusic.proxy.endMusic(getEntityId(), body.getEntityId());
-                    this.remove();
-                    return;
-                }
-                if (music[mTime] != 0 && music[mTime] <= 48) {
-                    if(instrument.shouldCutOff && lastPlayed != null){
-                        lastPlayed.stopSound();
-                    }
-                    lastPlayed = XercaMusic.proxy.playNote(instrument.getSound(music[mTime] - 1), getPosX(), getPosY() + 0.5d, getPosZ());
-                    this.world.addParticle(ParticleTypes.NOTE, getPosX(), getPosY() + 2.2D, getPosZ(), (music[mTime] -1) / 24.0D, 0.0D, 0.0D);
+    }
 
+    // Called by the client side scheduler every mPause ticks
+    @Override
+    public int playNext() {
+        if (!this.isAlive() || body == null || music == null) {
+            return 0;
+        }
+        if (mTime >= mLength) {
+            XercaMusic.proxy.endMusic(getEntityId(), body.getEntityId());
+            this.remove();
+            return 0;
+        }
+        byte pitch = music.getNote(mTime);
+        if (pitch != 0 && pitch <= 48) {
+            ItemInstrument noteInstrument = instrument;
+            XercaMusic.proxy.scheduleNote(world.getGameTime(), () -> {
+                if (!this.isAlive()) {
+                    return;
                 }
-                mTime++;
-            }
+                XercaMusic.proxy.playNote(noteInstrument.getSound(pitch - 1), getPosX(), getPosY() + 0.5d, getPosZ(), this, noteInstrument.shouldCutOff);
+                this.world.addParticle(ParticleTypes.NOTE, getPosX(), getPosY() + 2.2D, getPosZ(), (pitch -1) / 24.0D, 0.0D, 0.0D);
+            });
         }
+        mTime++;
+        return mPause;
     }
 
     public boolean isPlaying() {
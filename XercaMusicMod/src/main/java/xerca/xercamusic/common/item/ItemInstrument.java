@@ -10,13 +10,13 @@ import net.minecraft.item.ItemUseContext;
 import net.minecraft.util.*;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.World;
+import xerca.xercamusic.common.PerformanceRegistry;
 import xerca.xercamusic.common.XercaMusic;
 import xerca.xercamusic.common.block.BlockMusicBox;
 import xerca.xercamusic.common.block.Blocks;
 import xerca.xercamusic.common.entity.EntityMusicSpirit;
 
 import javax.annotation.Nonnull;
-import java.util.List;
 
 public class ItemInstrument extends Item {
     private SoundEvent[] sounds;
@@ -41,12 +41,12 @@ public class ItemInstrument extends Item {
 
     // Should be called from the server side
     public void playMusic(World worldIn, PlayerEntity playerIn, boolean canStop){
-        List<EntityMusicSpirit> musicSpirits = worldIn.getEntitiesWithinAABB(EntityMusicSpirit.class, playerIn.getBoundingBox().grow(3.0), entity -> entity.getBody().isEntityEqual(playerIn));
-        if(musicSpirits.size() == 0){
+        EntityMusicSpirit musicSpirit = PerformanceRegistry.get(playerIn);
+        if(musicSpirit == null){
             worldIn.addEntity(new EntityMusicSpirit(worldIn, playerIn, (ItemInstrument) playerIn.getHeldItemMainhand().getItem()));
         }
         else if(canStop){
-            musicSpirits.forEach(spirit -> spirit.setPlaying(false));
+            musicSpirit.setPlaying(false);
         }
     }
 
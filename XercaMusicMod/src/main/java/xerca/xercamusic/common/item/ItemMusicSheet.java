@@ -2,6 +2,7 @@ package xerca.xercamusic.common.item;
 
 import net.minecraft.block.BlockState;
 import net.minecraft.client.util.ITooltipFlag;
+import net.minecraft.entity.Entity;
 import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.item.Item;
 import net.minecraft.item.ItemStack;
@@ -18,6 +19,8 @@ import net.minecraft.util.text.TextFormatting;
 import net.minecraft.world.World;
 import net.minecraftforge.api.distmarker.Dist;
 import net.minecraftforge.api.distmarker.OnlyIn;
+import xerca.xercamusic.common.MusicCodec;
+import xerca.xercamusic.common.MusicPages;
 import xerca.xercamusic.common.XercaMusic;
 import xerca.xercamusic.common.block.BlockMusicBox;
 import xerca.xercamusic.common.block.Blocks;
@@ -66,14 +69,17 @@ public class ItemMusicSheet extends Item {
         return super.getDisplayName(stack);
     }
 
-    public static byte[] getMusic(@Nonnull ItemStack stack) {
-        if (stack.hasTag()) {
-            CompoundNBT nbttagcompound = stack.getTag();
-            if(nbttagcompound != null && nbttagcompound.contains("music")){
-                return nbttagcompound.getByteArray("music");
+    // Sheets that keep their notes in the tag are moved to the page store once they are in an inventory
+    @Override
+    public void inventoryTick(ItemStack stack, World worldIn, Entity entityIn, int itemSlot, boolean isSelected) {
+        if(!worldIn.isRemote && worldIn.getServer() != null){
+            if(MusicCodec.hasMusic(stack.getTag())){
+                MusicPages.get(worldIn.getServer()).migrate(stack.getTag());
+            }
+            else if(worldIn.getGameTime() % 200 == 0){
+                MusicPages.get(worldIn.getServer()).touch(MusicPages.getId(stack.getTag()));
             }
         }
-        return null;
     }
 
     public static int getPause(@Nonnull ItemStack stack) {
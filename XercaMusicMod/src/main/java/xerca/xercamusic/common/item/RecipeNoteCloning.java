@@ -11,6 +11,7 @@ import net.minecraft.nbt.CompoundNBT;
 import net.minecraft.util.NonNullList;
 import net.minecraft.util.ResourceLocation;
 import net.minecraft.world.World;
+import xerca.xercamusic.common.MusicCodec;
 
 @MethodsReturnNonnullByDefault
 public class RecipeNoteCloning extends SpecialRecipe {
@@ -80,6 +81,7 @@ public class RecipeNoteCloning extends SpecialRecipe {
             ItemStack resultStack = new ItemStack(Items.MUSIC_SHEET);
             CompoundNBT nbttagcompound = orgNote.getTag().copy();
             nbttagcompound.putInt("generation", gen + 1);
+            MusicCodec.migrate(nbttagcompound);
             resultStack.setTag(nbttagcompound);
             return resultStack;
         } else {
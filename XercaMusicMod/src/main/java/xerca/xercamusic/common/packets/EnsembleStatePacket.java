@@ -0,0 +1,58 @@
+package xerca.xercamusic.common.packets;
+
+import net.minecraft.network.PacketBuffer;
+import net.minecraft.util.math.BlockPos;
+import xerca.xercamusic.common.Ensemble;
+
+import javax.annotation.Nullable;
+
+public class EnsembleStatePacket {
+    private BlockPos pos;
+    private Ensemble ensemble;
+    private boolean messageIsValid;
+
+    public EnsembleStatePacket(BlockPos pos, @Nullable Ensemble ensemble) {
+        this.pos = pos;
+        this.ensemble = ensemble;
+    }
+
+    public EnsembleStatePacket() {
+        this.messageIsValid = false;
+    }
+
+    public static void encode(EnsembleStatePacket pkt, PacketBuffer buf) {
+        buf.writeBlockPos(pkt.pos);
+        buf.writeBoolean(pkt.ensemble != null);
+        if(pkt.ensemble != null){
+            pkt.ensemble.encode(buf);
+        }
+    }
+
+    public static EnsembleStatePacket decode(PacketBuffer buf) {
+        EnsembleStatePacket result = new EnsembleStatePacket();
+        try {
+            result.pos = buf.readBlockPos();
+            if(buf.readBoolean()){
+                result.ensemble = Ensemble.decode(result.pos, buf);
+            }
+        } catch (IndexOutOfBoundsException e) {
+            System.err.println("Exception while reading EnsembleStatePacket: " + e);
+            return null;
+        }
+        result.messageIsValid = true;
+        return result;
+    }
+
+    public BlockPos getPos() {
+        return pos;
+    }
+
+    @Nullable
+    public Ensemble getEnsemble() {
+        return ensemble;
+    }
+
+    public boolean isMessageValid() {
+        return messageIsValid;
+    }
+}
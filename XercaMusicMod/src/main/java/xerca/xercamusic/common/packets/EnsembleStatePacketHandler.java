@@ -0,0 +1,36 @@
+package xerca.xercamusic.common.packets;
+
+import net.minecraft.client.Minecraft;
+import net.minecraft.tileentity.TileEntity;
+import net.minecraft.world.World;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.api.distmarker.OnlyIn;
+import net.minecraftforge.fml.network.NetworkEvent;
+import xerca.xercamusic.common.tile_entity.TileEntityMetronome;
+
+import java.util.function.Supplier;
+
+public class EnsembleStatePacketHandler {
+    public static void handle(final EnsembleStatePacket message, Supplier<NetworkEvent.Context> ctx) {
+        if (!message.isMessageValid()) {
+            System.err.println("Packet was invalid");
+            return;
+        }
+
+        ctx.get().enqueueWork(() -> processMessage(message));
+        ctx.get().setPacketHandled(true);
+    }
+
+    @OnlyIn(Dist.CLIENT)
+    private static void processMessage(EnsembleStatePacket msg) {
+        World world = Minecraft.getInstance().world;
+        if(world == null || !world.isBlockLoaded(msg.getPos())){
+            return;
+        }
+
+        TileEntity te = world.getTileEntity(msg.getPos());
+        if(te instanceof TileEntityMetronome){
+            ((TileEntityMetronome) te).onEnsembleState(msg.getEnsemble());
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package xerca.xercamusic.common.packets;
+
+import net.minecraft.network.PacketBuffer;
+import xerca.xercamusic.common.MusicCodec;
+import xerca.xercamusic.common.MusicPages;
+
+import java.util.UUID;
+
+public class MusicPagePacket {
+    private UUID id;
+    private int page;
+    private int version;
+    private byte[] music;
+    private byte[] encodedMusic;
+    private boolean messageIsValid;
+
+    public MusicPagePacket(UUID id, int page, int version, byte[] encodedMusic) {
+        this.id = id;
+        this.page = page;
+        this.version = version;
+        this.encodedMusic = encodedMusic;
+    }
+
+    public MusicPagePacket() {
+        this.messageIsValid = false;
+    }
+
+    public static void encode(MusicPagePacket pkt, PacketBuffer buf) {
+        buf.writeUniqueId(pkt.id);
+        buf.writeVarInt(pkt.page);
+        buf.writeVarInt(pkt.version);
+        buf.writeByteArray(pkt.encodedMusic);
+    }
+
+    public static MusicPagePacket decode(PacketBuffer buf) {
+        MusicPagePacket result = new MusicPagePacket();
+        try {
+            result.id = buf.readUniqueId();
+            result.page = buf.readVarInt();
+            result.version = buf.readVarInt();
+            result.music = MusicCodec.readMusic(buf, MusicPages.PAGE_LENGTH);
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            System.err.println("Exception while reading MusicPagePacket: " + e);
+            return null;
+        }
+        result.messageIsValid = true;
+        return result;
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public int getPage() {
+        return page;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public byte[] getMusic() {
+        return music;
+    }
+
+    public boolean isMessageValid() {
+        return messageIsValid;
+    }
+}
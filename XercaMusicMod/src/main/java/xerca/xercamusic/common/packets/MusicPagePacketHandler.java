@@ -0,0 +1,25 @@
+package xerca.xercamusic.common.packets;
+
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.api.distmarker.OnlyIn;
+import net.minecraftforge.fml.network.NetworkEvent;
+import xerca.xercamusic.client.ClientMusicPages;
+
+import java.util.function.Supplier;
+
+public class MusicPagePacketHandler {
+    public static void handle(final MusicPagePacket message, Supplier<NetworkEvent.Context> ctx) {
+        if (!message.isMessageValid()) {
+            System.err.println("Packet was invalid");
+            return;
+        }
+
+        ctx.get().enqueueWork(() -> processMessage(message));
+        ctx.get().setPacketHandled(true);
+    }
+
+    @OnlyIn(Dist.CLIENT)
+    private static void processMessage(MusicPagePacket msg) {
+        ClientMusicPages.put(msg.getId(), msg.getPage(), msg.getVersion(), msg.getMusic());
+    }
+}
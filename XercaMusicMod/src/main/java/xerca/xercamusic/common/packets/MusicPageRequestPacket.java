@@ -0,0 +1,55 @@
+package xerca.xercamusic.common.packets;
+
+import net.minecraft.network.PacketBuffer;
+import xerca.xercamusic.common.MusicPages;
+
+import java.util.UUID;
+
+public class MusicPageRequestPacket {
+    private UUID id;
+    private int page;
+    private boolean messageIsValid;
+
+    public MusicPageRequestPacket(UUID id, int page) {
+        this.id = id;
+        this.page = page;
+    }
+
+    public MusicPageRequestPacket() {
+        this.messageIsValid = false;
+    }
+
+    public static void encode(MusicPageRequestPacket pkt, PacketBuffer buf) {
+        buf.writeUniqueId(pkt.id);
+        buf.writeVarInt(pkt.page);
+    }
+
+    public static MusicPageRequestPacket decode(PacketBuffer buf) {
+        MusicPageRequestPacket result = new MusicPageRequestPacket();
+        try {
+            result.id = buf.readUniqueId();
+            result.page = buf.readVarInt();
+            if(result.page < 0 || result.page >= MusicPages.MAX_PAGES){
+                System.err.println("Invalid page in MusicPageRequestPacket: " + result.page);
+                return null;
+            }
+        } catch (IndexOutOfBoundsException ioe) {
+            System.err.println("Exception while reading MusicPageRequestPacket: " + ioe);
+            return null;
+        }
+        result.messageIsValid = true;
+        return result;
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public int getPage() {
+        return page;
+    }
+
+    public boolean isMessageValid() {
+        return messageIsValid;
+    }
+}
@@ -0,0 +1,37 @@
+package xerca.xercamusic.common.packets;
+
+import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraftforge.fml.network.NetworkEvent;
+import net.minecraftforge.fml.network.PacketDistributor;
+import xerca.xercamusic.common.MusicCodec;
+import xerca.xercamusic.common.MusicPages;
+import xerca.xercamusic.common.XercaMusic;
+
+import java.util.function.Supplier;
+
+public class MusicPageRequestPacketHandler {
+    public static void handle(final MusicPageRequestPacket message, Supplier<NetworkEvent.Context> ctx) {
+        if (!message.isMessageValid()) {
+            System.err.println("Packet was invalid");
+            return;
+        }
+        ServerPlayerEntity sendingPlayer = ctx.get().getSender();
+        if (sendingPlayer == null) {
+            System.err.println("EntityPlayerMP was null when MusicPageRequestPacket was received");
+            return;
+        }
+
+        ctx.get().enqueueWork(() -> processMessage(message, sendingPlayer));
+        ctx.get().setPacketHandled(true);
+    }
+
+    private static void processMessage(MusicPageRequestPacket msg, ServerPlayerEntity pl) {
+        // Pages that were never written are empty, they are sent too so the client stops waiting for them
+        MusicPages pages = MusicPages.get(pl.getServer());
+        pages.touch(msg.getId());
+        MusicPages.Page page = pages.getPage(msg.getId(), msg.getPage());
+        MusicPagePacket pack = page != null ? new MusicPagePacket(msg.getId(), msg.getPage(), page.getVersion(), page.getData())
+                : new MusicPagePacket(msg.getId(), msg.getPage(), 0, MusicCodec.encode(new byte[0], 0));
+        XercaMusic.NETWORK_HANDLER.send(PacketDistributor.PLAYER.with(() -> pl), pack);
+    }
+}
@@ -1,12 +1,13 @@
 package xerca.xercamusic.common.packets;
 
 import net.minecraft.network.PacketBuffer;
+import xerca.xercamusic.common.MusicCodec;
+import xerca.xercamusic.common.MusicPages;
 import xerca.xercamusic.common.XercaMusic;
 
-import java.util.Arrays;
-
 public class MusicUpdatePacket {
-    private byte[] music;
+    // Notes of the changed pages, null for the unchanged ones
+    private byte[][] pages;
     private int length;
     private byte pause;
     private boolean signed;
@@ -15,15 +16,15 @@ public class MusicUpdatePacket {
     private boolean prevInsLocked;
     private boolean messageIsValid;
 
-    public MusicUpdatePacket(byte[] music, int length, byte pause, boolean signed, String title, byte prevInstrument, boolean prevInsLocked) {
-        this.music = Arrays.copyOfRange(music, 0, length);
+    public MusicUpdatePacket(byte[][] pages, int length, byte pause, boolean signed, String title, byte prevInstrument, boolean prevInsLocked) {
+        this.pages = pages;
         this.length = length;
         this.pause = pause;
         this.signed = signed;
         this.title = title;
         this.prevInstrument = prevInstrument;
         this.prevInsLocked = prevInsLocked;
-        XercaMusic.LOGGER.debug("MusicUpdatePacket length: " + length + " music length: " + this.music.length);
+        XercaMusic.LOGGER.debug("MusicUpdatePacket length: " + length + " pages: " + pages.length);
     }
 
     public MusicUpdatePacket() {
@@ -36,13 +37,25 @@ public class MusicUpdatePacket {
             result.title = buf.readString(255);
             result.signed = buf.readBoolean();
             result.pause = buf.readByte();
-            result.length = buf.readInt();
-            result.music = new byte[result.length];
-            buf.readBytes(result.music, 0, result.length);
+            result.length = buf.readVarInt();
+            if(result.length < 0 || result.length > MusicPages.MAX_LENGTH){
+                System.err.println("Invalid length in MusicUpdatePacket: " + result.length);
+                return null;
+            }
+            result.pages = new byte[MusicPages.getPageCount(result.length)][];
+            int count = buf.readVarInt();
+            for(int i = 0; i < count; i++){
+                int page = buf.readVarInt();
+                if(page < 0 || page >= result.pages.length){
+                    System.err.println("Invalid page in MusicUpdatePacket: " + page);
+                    return null;
+                }
+                result.pages[page] = MusicCodec.readMusic(buf, MusicPages.PAGE_LENGTH);
+            }
             result.prevInstrument = buf.readByte();
             result.prevInsLocked = buf.readBoolean();
-        } catch (IndexOutOfBoundsException ioe) {
-            System.err.println("Exception while reading MusicUpdatePacket: " + ioe);
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            System.err.println("Exception while reading MusicUpdatePacket: " + e);
             return null;
         }
         result.messageIsValid = true;
@@ -53,14 +66,26 @@ public class MusicUpdatePacket {
         buf.writeString(pkt.title);
         buf.writeBoolean(pkt.signed);
         buf.writeByte(pkt.pause);
-        buf.writeInt(pkt.length);
-        buf.writeBytes(pkt.music);
+        buf.writeVarInt(pkt.length);
+        int count = 0;
+        for(byte[] page : pkt.pages){
+            if(page != null){
+                count++;
+            }
+        }
+        buf.writeVarInt(count);
+        for(int i = 0; i < pkt.pages.length; i++){
+            if(pkt.pages[i] != null){
+                buf.writeVarInt(i);
+                MusicCodec.writeMusic(buf, pkt.pages[i], pkt.pages[i].length);
+            }
+        }
         buf.writeByte(pkt.prevInstrument);
         buf.writeBoolean(pkt.prevInsLocked);
     }
 
-    public byte[] getMusic() {
-        return music;
+    public byte[][] getPages() {
+        return pages;
     }
 
     public int getLength() {
@@ -4,6 +4,7 @@ import net.minecraft.entity.player.ServerPlayerEntity;
 import net.minecraft.item.ItemStack;
 import net.minecraft.nbt.CompoundNBT;
 import net.minecraftforge.fml.network.NetworkEvent;
+import xerca.xercamusic.common.MusicPages;
 import xerca.xercamusic.common.Triggers;
 import xerca.xercamusic.common.item.Items;
 
@@ -29,9 +30,11 @@ public class MusicUpdatePacketHandler {
         ItemStack note = pl.getHeldItemMainhand();
         if (!note.isEmpty() && note.getItem() == Items.MUSIC_SHEET) {
             CompoundNBT comp = note.getOrCreateTag();
+            MusicPages pages = MusicPages.get(pl.getServer());
 
-            comp.putByteArray("music", msg.getMusic());
-            comp.putInt("length", msg.getLength());
+            // Unchanged pages are taken from what the sheet had, so older sheets are moved to pages first
+            pages.migrate(comp);
+            pages.write(comp, msg.getLength(), msg.getPages());
             comp.putByte("pause", msg.getPause());
             comp.putInt("generation", 0);
             comp.putByte("prevIns", msg.getPrevInstrument());
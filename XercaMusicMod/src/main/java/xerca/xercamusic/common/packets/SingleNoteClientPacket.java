@@ -9,13 +9,16 @@ import xerca.xercamusic.common.item.ItemInstrument;
 import xerca.xercamusic.common.item.Items;
 
 public class SingleNoteClientPacket {
-    private int note;
+    private static final long VALID_NOTES = (1L << 48) - 1;
+
+    // Notes played in the same tick, bit i being note i
+    private long notes;
     private ItemInstrument instrumentItem;
     private PlayerEntity playerEntity;
     private boolean messageIsValid;
 
-    public SingleNoteClientPacket(int note, ItemInstrument itemInstrument, PlayerEntity playerEntity) {
-        this.note = note;
+    public SingleNoteClientPacket(long notes, ItemInstrument itemInstrument, PlayerEntity playerEntity) {
+        this.notes = notes;
         this.instrumentItem = itemInstrument;
         this.playerEntity = playerEntity;
     }
@@ -27,12 +30,12 @@ public class SingleNoteClientPacket {
     public static SingleNoteClientPacket decode(PacketBuffer buf) {
         SingleNoteClientPacket result = new SingleNoteClientPacket();
         try {
-            result.note = buf.readInt();
-            int instrumentId = buf.readInt();
-            int playerId = buf.readInt();
+            int playerId = buf.readVarInt();
+            int instrumentId = buf.readVarInt();
+            result.notes = buf.readVarLong();
 
-            if(result.note < 0 || result.note >= 48){
-                throw new IndexOutOfBoundsException("Invalid note: " + result.note);
+            if(result.notes == 0 || (result.notes & ~VALID_NOTES) != 0){
+                throw new IndexOutOfBoundsException("Invalid notes: " + Long.toHexString(result.notes));
             }
             if(instrumentId < 0 || instrumentId >= Items.instruments.length){
                 throw new IndexOutOfBoundsException("Invalid instrumentId: " + instrumentId);
@@ -54,13 +57,9 @@ public class SingleNoteClientPacket {
     }
 
     public static void encode(SingleNoteClientPacket pkt, PacketBuffer buf) {
-
-        int instrumentId = pkt.getInstrumentItem().getInstrumentId();
-        int playerId = pkt.getPlayerEntity().getEntityId();
-
-        buf.writeInt(pkt.getNote());
-        buf.writeInt(instrumentId);
-        buf.writeInt(playerId);
+        buf.writeVarInt(pkt.getPlayerEntity().getEntityId());
+        buf.writeVarInt(pkt.getInstrumentItem().getInstrumentId());
+        buf.writeVarLong(pkt.getNotes());
     }
 
     public boolean isMessageValid() {
@@ -68,12 +67,12 @@ public class SingleNoteClientPacket {
     }
 
 
-    public int getNote() {
-        return note;
+    public long getNotes() {
+        return notes;
     }
 
-    public void setNote(int note) {
-        this.note = note;
+    public void setNotes(long notes) {
+        this.notes = notes;
     }
 
     public ItemInstrument getInstrumentItem() {
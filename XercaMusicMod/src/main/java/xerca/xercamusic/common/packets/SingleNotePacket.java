@@ -22,8 +22,8 @@ public class SingleNotePacket {
     public static SingleNotePacket decode(PacketBuffer buf) {
         SingleNotePacket result = new SingleNotePacket();
         try {
-            result.note = buf.readInt();
-            int instrumentId = buf.readInt();
+            int instrumentId = buf.readVarInt();
+            result.note = buf.readByte();
             if(result.note < 0 || result.note >= 48){
                 throw new IndexOutOfBoundsException("Invalid note: " + result.note);
             }
@@ -40,8 +40,8 @@ public class SingleNotePacket {
     }
 
     public static void encode(SingleNotePacket pkt, PacketBuffer buf) {
-        buf.writeInt(pkt.note);
-        buf.writeInt(pkt.instrumentItem.getInstrumentId());
+        buf.writeVarInt(pkt.instrumentItem.getInstrumentId());
+        buf.writeByte(pkt.note);
     }
 
     public boolean isMessageValid() {
@@ -1,12 +1,8 @@
 package xerca.xercamusic.common.packets;
 
 import net.minecraft.entity.player.ServerPlayerEntity;
-import net.minecraft.util.SoundCategory;
-import net.minecraft.util.SoundEvent;
 import net.minecraftforge.fml.network.NetworkEvent;
-import net.minecraftforge.fml.network.PacketDistributor;
-import xerca.xercamusic.common.XercaMusic;
-import xerca.xercamusic.common.item.Items;
+import xerca.xercamusic.common.NoteBroadcaster;
 
 import java.util.function.Supplier;
 
@@ -27,8 +23,6 @@ public class SingleNotePacketHandler {
     }
 
     private static void processMessage(SingleNotePacket msg, ServerPlayerEntity pl) {
-        PacketDistributor.PacketTarget target = PacketDistributor.NEAR.with(() -> new PacketDistributor.TargetPoint(pl.getPosX(), pl.getPosY(), pl.getPosZ(), 24.0D, pl.getServerWorld().getDimensionKey()));
-        SingleNoteClientPacket packet = new SingleNoteClientPacket(msg.getNote(), msg.getInstrumentItem(), pl);
-        XercaMusic.NETWORK_HANDLER.send(target, packet);
+        NoteBroadcaster.queue(pl, msg.getInstrumentItem(), msg.getNote());
     }
 }
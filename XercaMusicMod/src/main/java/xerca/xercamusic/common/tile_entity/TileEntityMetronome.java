@@ -9,13 +9,17 @@ import net.minecraft.tileentity.TileEntity;
 import net.minecraft.util.SoundCategory;
 import net.minecraft.util.math.AxisAlignedBB;
 import net.minecraft.util.math.vector.Vector3i;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraftforge.fml.network.PacketDistributor;
+import xerca.xercamusic.common.Ensemble;
+import xerca.xercamusic.common.MusicianIndex;
 import xerca.xercamusic.common.SoundEvents;
 import xerca.xercamusic.common.XercaMusic;
 import xerca.xercamusic.common.block.BlockMetronome;
-import xerca.xercamusic.common.item.ItemInstrument;
-import xerca.xercamusic.common.item.ItemMusicSheet;
 import xerca.xercamusic.common.item.Items;
+import xerca.xercamusic.common.packets.EnsembleStatePacket;
 
+import javax.annotation.Nullable;
 import java.util.List;
 
 public class TileEntityMetronome extends TileEntity implements ITickableTileEntity {
@@ -25,6 +29,8 @@ public class TileEntityMetronome extends TileEntity implements ITickableTileEnti
     private int age = 0;
     private boolean oldPoweredState = false;
     private int countDown = 0;
+    // The music boxes in range conducted by this metronome, while they are playing
+    private Ensemble ensemble = null;
 
     public TileEntityMetronome(){
         super(TileEntities.METRONOME);
@@ -33,12 +39,59 @@ public class TileEntityMetronome extends TileEntity implements ITickableTileEnti
     @Override
     public CompoundNBT write(CompoundNBT parent) {
         super.write(parent);
+        // Kept so a powered metronome doesn't start its ensemble again when it is loaded
+        parent.putBoolean("was_powered", oldPoweredState);
+        if (ensemble != null) {
+            parent.put("ensemble", ensemble.write(new CompoundNBT()));
+        }
         return parent;
     }
 
     @Override
     public void read(BlockState state, CompoundNBT parent) {
 		super.read(state, parent);
+        oldPoweredState = parent.getBoolean("was_powered");
+        setEnsemble(parent.contains("ensemble", 10) ? Ensemble.read(pos, parent.getCompound("ensemble")) : null);
+    }
+
+    @Override
+    public CompoundNBT getUpdateTag() {
+        return this.write(new CompoundNBT());
+    }
+
+    @Override
+    public void remove() {
+        super.remove();
+        setEnsemble(null);
+    }
+
+    /**
+     * Called on the client when the server starts an ensemble or changes its tempo
+     */
+    public void onEnsembleState(@Nullable Ensemble ensemble) {
+        setEnsemble(ensemble);
+    }
+
+    private void setEnsemble(@Nullable Ensemble ensemble) {
+        if (this.ensemble != null) {
+            if (ensemble != null && ensemble.isSamePerformance(this.ensemble)) {
+                ensemble.continueFrom(this.ensemble);
+            }
+            else if (world != null) {
+                this.ensemble.stop(world);
+            }
+        }
+        this.ensemble = ensemble;
+    }
+
+    // Server side, sends the new state of the ensemble to clients as one message for the whole group
+    private void conduct(@Nullable Ensemble ensemble) {
+        if (ensemble == null && this.ensemble == null) {
+            return;
+        }
+        setEnsemble(ensemble);
+        markDirty();
+        XercaMusic.NETWORK_HANDLER.send(PacketDistributor.TRACKING_CHUNK.with(() -> (Chunk) world.getChunk(pos)), new EnsembleStatePacket(pos, ensemble));
     }
 
     @Override
@@ -46,12 +99,18 @@ public class TileEntityMetronome extends TileEntity implements ITickableTileEnti
         if (this.world != null) {
             BlockState state = this.getBlockState();
             if (state.get(BlockMetronome.POWERED)) {
+                int bpmLevel = state.get(BlockMetronome.BPM);
                 if(!oldPoweredState){
                     age = 0;
                     countDown = 0;
+                    if(!this.world.isRemote){
+                        conduct(Ensemble.gather(world, pos, halfRange, pauseLevels[bpmLevel]));
+                    }
+                }
+                else if(!this.world.isRemote && ensemble != null && ensemble.getPause() != pauseLevels[bpmLevel]){
+                    conduct(ensemble.withPause(pauseLevels[bpmLevel], world.getGameTime()));
                 }
 
-                int bpmLevel = state.get(BlockMetronome.BPM);
                 if (age % pauseLevels[bpmLevel] == 0) {
                     if(this.world.isRemote){
                         // Client side
@@ -61,9 +120,7 @@ public class TileEntityMetronome extends TileEntity implements ITickableTileEnti
                     else{
                         // Server side
                         if(countDown >= 3){
-                            List<PlayerEntity> players = world.getEntitiesWithinAABB(PlayerEntity.class, new AxisAlignedBB(this.pos.subtract(halfRange), this.pos.add(halfRange)),
-                                    player -> player.getHeldItemMainhand().getItem() instanceof ItemInstrument && player.getHeldItemOffhand().getItem() instanceof ItemMusicSheet
-                                            && player.getHeldItemOffhand().hasTag() && player.getHeldItemOffhand().getTag().getInt("pause") == pauseLevels[bpmLevel] );
+                            List<PlayerEntity> players = MusicianIndex.getMusicians(world, pauseLevels[bpmLevel], new AxisAlignedBB(this.pos.subtract(halfRange), this.pos.add(halfRange)));
 
                             for(PlayerEntity player : players){
                                 Items.GUITAR.playMusic(world, player, false);
@@ -77,8 +134,18 @@ public class TileEntityMetronome extends TileEntity implements ITickableTileEnti
                 oldPoweredState = true;
                 age++;
             }else{
+                if(oldPoweredState){
+                    // Both sides see the redstone, so stopping doesn't need a message
+                    setEnsemble(null);
+                    markDirty();
+                }
                 oldPoweredState = false;
             }
+
+            if (ensemble != null && !ensemble.update(world)) {
+                setEnsemble(null);
+                markDirty();
+            }
         }
     }
 
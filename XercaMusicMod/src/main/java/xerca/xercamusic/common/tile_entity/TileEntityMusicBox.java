@@ -7,7 +7,6 @@ import net.minecraft.nbt.CompoundNBT;
 import net.minecraft.network.NetworkManager;
 import net.minecraft.network.play.server.SUpdateTileEntityPacket;
 import net.minecraft.particles.ParticleTypes;
-import net.minecraft.tileentity.ITickableTileEntity;
 import net.minecraft.tileentity.TileEntity;
 import net.minecraft.util.Direction;
 import net.minecraft.util.ResourceLocation;
@@ -16,28 +15,28 @@ import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.chunk.Chunk;
 import net.minecraftforge.fml.network.PacketDistributor;
 import net.minecraftforge.registries.ForgeRegistries;
-import xerca.xercamusic.client.NoteSound;
+import xerca.xercamusic.common.MusicPages;
+import xerca.xercamusic.common.PagedMusic;
+import xerca.xercamusic.common.MusicPlaybackScheduler;
 import xerca.xercamusic.common.XercaMusic;
 import xerca.xercamusic.common.block.BlockMusicBox;
 import xerca.xercamusic.common.item.ItemInstrument;
 import xerca.xercamusic.common.item.ItemMusicSheet;
 import xerca.xercamusic.common.packets.MusicBoxUpdatePacket;
 
-public class TileEntityMusicBox extends TileEntity implements ITickableTileEntity {
+public class TileEntityMusicBox extends TileEntity implements MusicPlaybackScheduler.Performance {
     private boolean isPlaying = false;
-    private boolean oldPoweredState = false;
-    private boolean stopPowering = false;
     private boolean firstBlockUpdate = true;
 
     private ItemStack noteStack = ItemStack.EMPTY;
     private ItemInstrument instrument;
-    private byte[] music;
+    private PagedMusic music;
     private int mLength;
     private int mTime = 0;
     private byte mPause;
-    private int age = 0;
-    private int poweringAge = 0;
-    private NoteSound lastPlayed = null;
+    // The metronome conducting this box, and the performance it is playing in or has played its part of
+    private BlockPos conductor = null;
+    private long ensembleId = -1;
 
     public TileEntityMusicBox() {
         super(TileEntities.MUSIC_BOX);
@@ -62,6 +61,10 @@ public class TileEntityMusicBox extends TileEntity implements ITickableTileEntit
             ResourceLocation resourcelocation = ForgeRegistries.ITEMS.getKey(this.instrument);
             parent.putString("instrument_id", resourcelocation == null ? "minecraft:air" : resourcelocation.toString());
         }
+        // Kept so the box doesn't join the same performance again after it is loaded
+        if (this.conductor == null && this.ensembleId >= 0) {
+            parent.putLong("ensemble_done", this.ensembleId);
+        }
 
         return parent;
     }
@@ -77,6 +80,9 @@ public class TileEntityMusicBox extends TileEntity implements ITickableTileEntit
         if (parent.contains("instrument_id", 8)) {
             this.setInstrument(ForgeRegistries.ITEMS.getValue(new ResourceLocation(parent.getString("instrument_id"))));
         }
+        if (this.conductor == null) {
+            this.ensembleId = parent.contains("ensemble_done", 4) ? parent.getLong("ensemble_done") : -1;
+        }
     }
 
     @Override
@@ -91,92 +97,167 @@ public class TileEntityMusicBox extends TileEntity implements ITickableTileEntit
         this.read(state, nbt);
     }
 
-    private void stopPowering(){
-        BlockState state = this.getBlockState();
-        world.setBlockState(pos, state.with(BlockMusicBox.POWERING, false));
-        stopPowering = false;
-        poweringAge = 0;
+    /**
+     * Called on both sides when the box gets a redstone signal. Starts or stops the music.
+     */
+    public void onPowered() {
+        if(noteStack.isEmpty() || instrument == null || world == null){
+            return;
+        }
+        if(conductor != null){
+            // The conductor starts and stops the boxes of its ensemble
+            return;
+        }
+        isPlaying = !isPlaying;
+        mTime = 0;
+        if (isPlaying) {
+            MusicPlaybackScheduler.get(world).start(this);
+        }
+        else {
+            MusicPlaybackScheduler.get(world).cancel(this);
+        }
     }
 
+    // Called by the scheduler every mPause ticks while playing
     @Override
-    public void tick() {
-        // Powering state timer should work in all cases
-        if(stopPowering){
-            if(poweringAge >= 20){
-                stopPowering();
-                return;
-            }
-            else{
-                poweringAge++;
-            }
+    public int playNext() {
+        if (!isPlaying || isRemoved() || world == null) {
+            return 0;
         }
-
-        // Other things only work if a note stack and an instrument are present
-        if(noteStack.isEmpty() || instrument == null){
-            return;
+        if (noteStack.isEmpty() || instrument == null || music == null) {
+            isPlaying = false;
+            return 0;
         }
-        BlockState state = this.getBlockState();
+        if (mPause == 0) {
+            XercaMusic.LOGGER.error("TileEntityMusicBox mPause is 0! THIS SHOULD NOT HAPPEN!");
+            isPlaying = false;
+            return 0;
+        }
+        if (mTime >= mLength) {
+            finish();
+            return 0;
+        }
+
+        playCurrentNote(world.getGameTime());
+        mTime++;
+        return mPause;
+    }
 
-//        XercaMusic.LOGGER.debug("oldPoweredState: " + oldPoweredState);
-
-        if (state.get(BlockMusicBox.POWERED)) {
-            if (!oldPoweredState) {
-//                XercaMusic.LOGGER.debug(this.pos + " Unpowered to powered");
-                // unpowered to powered
-                isPlaying = !isPlaying;
-                age = 0;
-                mTime = 0;
-                poweringAge = 0;
-                oldPoweredState = true;
+    public boolean canPlay() {
+        return !noteStack.isEmpty() && instrument != null && music != null;
+    }
+
+    /**
+     * Called on both sides by the conductor of an ensemble at every beat, in place of the box's own playback
+     *
+     * @param tick the world time of the beat
+     * @return false once the music of the box has ended
+     */
+    public boolean playBeat(BlockPos conductorPos, long id, int beat, long tick) {
+        if (isRemoved() || world == null) {
+            return false;
+        }
+        if (conductor == null && id == ensembleId) {
+            // Has played its part of this performance already
+            return false;
+        }
+        boolean joined = false;
+        if (!conductorPos.equals(conductor) || id != ensembleId) {
+            // Joins the performance
+            MusicPlaybackScheduler.get(world).cancel(this);
+            conductor = conductorPos;
+            ensembleId = id;
+            isPlaying = true;
+            joined = true;
+        }
+        if (!isPlaying) {
+            return false;
+        }
+        if (!canPlay()) {
+            conductor = null;
+            isPlaying = false;
+            return false;
+        }
+        if (beat >= mLength) {
+            if (joined) {
+                // Loaded after its part was over, it never played so it doesn't pulse either
+                conductor = null;
+                isPlaying = false;
             }
-        }else{
-            if (oldPoweredState) {
-//                XercaMusic.LOGGER.debug(this.pos + " Powered to unpowered");
-                oldPoweredState = false;
+            else {
+                finish();
             }
+            return false;
         }
 
-        if (isPlaying) {
-            if (mPause == 0) {
-                XercaMusic.LOGGER.error("TileEntityMusicBox mPause is 0! THIS SHOULD NOT HAPPEN!");
-                return;
-            }
-            if (age % mPause == 0) {
-                if (mTime >= mLength) {
-                    //System.out.println("music bitti!");
-                    age = 0;
-                    mTime = 0;
-                    poweringAge = 0;
-                    isPlaying = false;
-                    stopPowering = true;
-
-                    //if(!world.isRemote) {
-                        Direction rightSide = state.get(BlockMusicBox.HORIZONTAL_FACING).rotateY();
-                        world.setBlockState(pos, state.with(BlockMusicBox.POWERING, true));
-
-                        BlockPos neighbor = pos.offset(rightSide);
-                        world.neighborChanged(neighbor, this.getBlockState().getBlock(), pos);
-                        world.notifyNeighborsOfStateExcept(neighbor, this.getBlockState().getBlock(), rightSide.getOpposite());
-
-                    //}
-                    return;
-                }
-
-                if(world.isRemote && mTime < music.length){
-                    if (music[mTime] != 0 && music[mTime] <= 48) {
+        mTime = beat;
+        playCurrentNote(tick);
+        return true;
+    }
 
-                        if(instrument.shouldCutOff && lastPlayed != null){
-                            lastPlayed.stopSound();
-                        }
-                        lastPlayed = XercaMusic.proxy.playNote(instrument.getSound(music[mTime] - 1), pos.getX(), pos.getY() + 0.5D, pos.getZ(), SoundCategory.RECORDS, 4.0f, 1.0f);
+    public void leaveEnsemble(BlockPos conductorPos) {
+        if (conductorPos.equals(conductor)) {
+            conductor = null;
+            isPlaying = false;
+            mTime = 0;
+        }
+    }
 
-                        this.world.addParticle(ParticleTypes.NOTE, pos.getX() + 0.5D, pos.getY() + 2.2D, pos.getZ() + 0.5D, (music[mTime] -1) / 24.0D, 0.0D, 0.0D);
+    private void playCurrentNote(long tick) {
+        if(world.isRemote){
+            byte note = music.getNote(mTime);
+            if (note != 0 && note <= 48) {
+                ItemInstrument noteInstrument = instrument;
+                XercaMusic.proxy.scheduleNote(tick, () -> {
+                    if (isRemoved() || world == null) {
+                        return;
                     }
-                }
-                mTime++;
+                    XercaMusic.proxy.playNote(noteInstrument.getSound(note - 1), pos.getX(), pos.getY() + 0.5D, pos.getZ(), SoundCategory.RECORDS, 4.0f, 1.0f, this, noteInstrument.shouldCutOff);
+
+                    this.world.addParticle(ParticleTypes.NOTE, pos.getX() + 0.5D, pos.getY() + 2.2D, pos.getZ() + 0.5D, (note -1) / 24.0D, 0.0D, 0.0D);
+                });
             }
         }
-        age++;
+    }
+
+    // Stops playing and sends a redstone pulse from the right side
+    private void finish() {
+        BlockState state = this.getBlockState();
+        //System.out.println("music bitti!");
+        mTime = 0;
+        isPlaying = false;
+        // Back to its own redstone, even if the conductor is unloaded and never hands it back
+        conductor = null;
+
+        //if(!world.isRemote) {
+            Direction rightSide = state.get(BlockMusicBox.HORIZONTAL_FACING).rotateY();
+            world.setBlockState(pos, state.with(BlockMusicBox.POWERING, true));
+
+            BlockPos neighbor = pos.offset(rightSide);
+            world.neighborChanged(neighbor, this.getBlockState().getBlock(), pos);
+            world.notifyNeighborsOfStateExcept(neighbor, this.getBlockState().getBlock(), rightSide.getOpposite());
+
+        //}
+        if(!world.isRemote) {
+            // The output pulse is ended by a block tick
+            world.getPendingBlockTicks().scheduleTick(pos, state.getBlock(), BlockMusicBox.PULSE_LENGTH);
+        }
+    }
+
+    @Override
+    public void remove() {
+        super.remove();
+        if (world != null) {
+            MusicPlaybackScheduler.get(world).cancel(this);
+        }
+    }
+
+    @Override
+    public void onChunkUnloaded() {
+        super.onChunkUnloaded();
+        if (world != null) {
+            MusicPlaybackScheduler.get(world).cancel(this);
+        }
     }
 
     public ItemStack getNoteStack() {
@@ -190,11 +271,19 @@ public class TileEntityMusicBox extends TileEntity implements ITickableTileEntit
             }
 
             this.noteStack = noteStack;
-            if (noteStack.hasTag() && noteStack.getTag().contains("music")) {
+            if (noteStack.hasTag()) {
                 CompoundNBT comp = noteStack.getTag();
-                music = comp.getByteArray("music");
+                if(world != null && !world.isRemote && world.getServer() != null){
+                    MusicPages pages = MusicPages.get(world.getServer());
+                    pages.migrate(comp);
+                    pages.touch(MusicPages.getId(comp));
+                }
+                music = new PagedMusic(comp);
                 mLength = comp.getInt("length");
                 mPause = comp.getByte("pause");
+                if(world != null && world.isRemote){
+                    music.preload();
+                }
             }
             markDirty();
         }
@@ -220,6 +309,9 @@ public class TileEntityMusicBox extends TileEntity implements ITickableTileEntit
             if(world != null && !world.isRemote){
                 updateClient(null, instrument);
             }
+            else if(world != null){
+                XercaMusic.proxy.preloadInstrument((ItemInstrument) instrument);
+            }
 
             this.instrument = (ItemInstrument) instrument;
             markDirty();
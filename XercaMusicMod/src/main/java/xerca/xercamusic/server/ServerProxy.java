@@ -1,8 +1,8 @@
 package xerca.xercamusic.server;
 
+import net.minecraft.nbt.CompoundNBT;
 import net.minecraft.util.SoundCategory;
 import net.minecraft.util.SoundEvent;
-import xerca.xercamusic.client.NoteSound;
 import xerca.xercamusic.common.Proxy;
 import xerca.xercamusic.common.item.ItemInstrument;
 
@@ -16,12 +16,32 @@ public class ServerProxy implements Proxy {
     }
 
     @Override
-    public NoteSound playNote(SoundEvent event, double posX, double posY, double posZ) {
-        return null;
+    public void playNote(SoundEvent event, double posX, double posY, double posZ, Object source, boolean cutOff) {
+
+    }
+
+    @Override
+    public void playNote(SoundEvent event, double posX, double posY, double posZ, SoundCategory category, float volume, float pitch) {
+
+    }
+
+    @Override
+    public void playNote(SoundEvent event, double posX, double posY, double posZ, SoundCategory category, float volume, float pitch, Object source, boolean cutOff) {
+
+    }
+
+    @Override
+    public void scheduleNote(double tick, Runnable note) {
+
+    }
+
+    @Override
+    public void preloadInstrument(ItemInstrument instrument) {
+
     }
 
     @Override
-    public NoteSound playNote(SoundEvent event, double posX, double posY, double posZ, SoundCategory category, float volume, float pitch) {
+    public byte[] getMusicPage(CompoundNBT sheet, int page) {
         return null;
     }
 
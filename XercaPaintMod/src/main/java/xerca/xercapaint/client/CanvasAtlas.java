@@ -0,0 +1,231 @@
+package xerca.xercapaint.client;
+
+import com.google.common.collect.Lists;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.renderer.RenderType;
+import net.minecraft.client.renderer.texture.DynamicTexture;
+import net.minecraft.client.renderer.texture.NativeImage;
+import net.minecraft.client.renderer.texture.TextureManager;
+import net.minecraft.resources.IResource;
+import net.minecraft.util.ResourceLocation;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.api.distmarker.OnlyIn;
+import xerca.xercapaint.common.XercaPaint;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Packs canvas pictures into shared atlas pages, so that every canvas on a page is drawn with the same texture and
+ * render type and ends up in a single buffer batch.
+ *
+ * Pages are split into 16x16 cells and a canvas takes as many cells as it covers. The first cell of every page holds
+ * the wooden back texture, so the back and sides of a canvas are drawn from the same page as its front, and the second
+ * one is plain white for far away canvases that are only drawn in their average color.
+ */
+@OnlyIn(Dist.CLIENT)
+public class CanvasAtlas implements AutoCloseable {
+    static final int PAGE_SIZE = 256;
+    static final int CELL_SIZE = 16;
+    private static final int CELLS = PAGE_SIZE / CELL_SIZE;
+    // Keeps nearest sampling from picking texels of a neighbouring cell at the exact borders
+    private static final float UV_INSET = 0.01f / PAGE_SIZE;
+
+    private final TextureManager textureManager;
+    private final ResourceLocation backLocation;
+    private final List<Page> pages = Lists.newArrayList();
+    private int pageCounter = 0;
+
+    CanvasAtlas(TextureManager textureManager, ResourceLocation backLocation) {
+        this.textureManager = textureManager;
+        this.backLocation = backLocation;
+    }
+
+    /**
+     * Reserves a region for a canvas of the given size, opening a new page if no page has room for it.
+     */
+    Slot allocate(int width, int height) {
+        int cellsX = (width + CELL_SIZE - 1) / CELL_SIZE;
+        int cellsY = (height + CELL_SIZE - 1) / CELL_SIZE;
+        for(Page page : pages){
+            Slot slot = page.allocate(cellsX, cellsY, width, height);
+            if(slot != null){
+                return slot;
+            }
+        }
+        Page page = new Page();
+        pages.add(page);
+        return page.allocate(cellsX, cellsY, width, height);
+    }
+
+    @Override
+    public void close() {
+        for(Page page : pages){
+            page.close();
+        }
+        pages.clear();
+    }
+
+    @OnlyIn(Dist.CLIENT)
+    public class Page {
+        private final DynamicTexture texture;
+        private final ResourceLocation location;
+        private final RenderType renderType;
+        private final boolean[] used = new boolean[CELLS * CELLS];
+        private final Slot backSlot;
+        private final Slot whiteSlot;
+        private int slotCount = 0;
+
+        private Page() {
+            this.texture = new DynamicTexture(PAGE_SIZE, PAGE_SIZE, true);
+            this.location = textureManager.getDynamicTextureLocation("canvas_atlas/" + (pageCounter++), texture);
+            this.renderType = RenderType.getEntitySolid(location);
+            this.backSlot = new Slot(this, 0, 0, CELL_SIZE, CELL_SIZE);
+            this.whiteSlot = new Slot(this, CELL_SIZE, 0, CELL_SIZE, CELL_SIZE);
+            used[0] = true;
+            used[1] = true;
+            copyBackTexture();
+        }
+
+        public ResourceLocation getLocation() {
+            return location;
+        }
+
+        public RenderType getRenderType() {
+            return renderType;
+        }
+
+        public Slot getBackSlot() {
+            return backSlot;
+        }
+
+        public Slot getWhiteSlot() {
+            return whiteSlot;
+        }
+
+        private void copyBackTexture() {
+            NativeImage image = texture.getTextureData();
+            if(image == null){
+                return;
+            }
+            try (IResource resource = Minecraft.getInstance().getResourceManager().getResource(backLocation);
+                 NativeImage back = NativeImage.read(resource.getInputStream())) {
+                for(int y = 0; y < CELL_SIZE; y++){
+                    for(int x = 0; x < CELL_SIZE; x++){
+                        image.setPixelRGBA(x, y, back.getPixelRGBA(x % back.getWidth(), y % back.getHeight()));
+                    }
+                }
+            } catch (IOException e) {
+                XercaPaint.LOGGER.warn("Could not load canvas back texture: " + e.getMessage());
+                image.fillAreaRGBA(0, 0, CELL_SIZE, CELL_SIZE, 0xFF5A87C4);
+            }
+            image.fillAreaRGBA(CELL_SIZE, 0, CELL_SIZE, CELL_SIZE, 0xFFFFFFFF);
+            texture.updateDynamicTexture();
+        }
+
+        @Nullable
+        private Slot allocate(int cellsX, int cellsY, int width, int height) {
+            for(int cy = 0; cy + cellsY <= CELLS; cy++){
+                for(int cx = 0; cx + cellsX <= CELLS; cx++){
+                    if(isFree(cx, cy, cellsX, cellsY)){
+                        mark(cx, cy, cellsX, cellsY, true);
+                        slotCount++;
+                        return new Slot(this, cx * CELL_SIZE, cy * CELL_SIZE, width, height);
+                    }
+                }
+            }
+            return null;
+        }
+
+        private void free(Slot slot) {
+            mark(slot.x / CELL_SIZE, slot.y / CELL_SIZE, (slot.width + CELL_SIZE - 1) / CELL_SIZE, (slot.height + CELL_SIZE - 1) / CELL_SIZE, false);
+            slotCount--;
+            if(slotCount == 0 && pages.size() > 1){
+                pages.remove(this);
+                close();
+            }
+        }
+
+        private boolean isFree(int cx, int cy, int cellsX, int cellsY) {
+            for(int y = cy; y < cy + cellsY; y++){
+                for(int x = cx; x < cx + cellsX; x++){
+                    if(used[y * CELLS + x]){
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        private void mark(int cx, int cy, int cellsX, int cellsY, boolean value) {
+            for(int y = cy; y < cy + cellsY; y++){
+                for(int x = cx; x < cx + cellsX; x++){
+                    used[y * CELLS + x] = value;
+                }
+            }
+        }
+
+        private void close() {
+            textureManager.deleteTexture(location);
+            texture.close();
+        }
+    }
+
+    @OnlyIn(Dist.CLIENT)
+    public class Slot {
+        private final Page page;
+        private final int x;
+        private final int y;
+        private final int width;
+        private final int height;
+        private boolean freed = false;
+
+        private Slot(Page page, int x, int y, int width, int height) {
+            this.page = page;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+        }
+
+        public Page getPage() {
+            return page;
+        }
+
+        /**
+         * Maps a texture coordinate of this slot in [0, 1] to the coordinate on the atlas page
+         */
+        public float u(float tx) {
+            return (x + tx * width) / PAGE_SIZE + (tx < 0.5f ? UV_INSET : -UV_INSET);
+        }
+
+        public float v(float ty) {
+            return (y + ty * height) / PAGE_SIZE + (ty < 0.5f ? UV_INSET : -UV_INSET);
+        }
+
+        /**
+         * Writes ABGR pixels into this slot and uploads only the changed region of the page.
+         */
+        public void upload(int[] abgrPixels) {
+            NativeImage image = page.texture.getTextureData();
+            if(image == null || freed){
+                return;
+            }
+            for(int i = 0; i < height; ++i) {
+                for(int j = 0; j < width; ++j) {
+                    image.setPixelRGBA(x + j, y + i, abgrPixels[j + i * width]);
+                }
+            }
+            page.texture.bindTexture();
+            image.uploadTextureSub(0, x, y, x, y, width, height, false, false);
+        }
+
+        public void free() {
+            if(!freed){
+                freed = true;
+                page.free(this);
+            }
+        }
+    }
+}
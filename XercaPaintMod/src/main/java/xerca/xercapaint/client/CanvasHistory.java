@@ -0,0 +1,189 @@
+package xerca.xercapaint.client;
+
+import com.google.common.collect.Maps;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.api.distmarker.OnlyIn;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+/**
+ * Undo and redo history of the canvas editor.
+ *
+ * A stroke only keeps the pixels it changed, as their positions and the indices of their old and new colors in a color
+ * table of its own, so its cost depends on the size of the stroke rather than the canvas. There is at most one old color
+ * per pixel and a stroke only paints a few, so the table stays far below the reach of its char indices. Strokes are
+ * dropped oldest first, together with their colors, once the history grows past its memory budget.
+ */
+@OnlyIn(Dist.CLIENT)
+public class CanvasHistory {
+    private static final int STROKE_OVERHEAD = 48;
+
+    private final long budget;
+    private final Deque<Stroke> undoStack = new ArrayDeque<>();
+    private final Deque<Stroke> redoStack = new ArrayDeque<>();
+    private long size = 0;
+
+    // Stroke being recorded, pixel position to its index in the stroke
+    private final int[] recordedAt;
+    private final IntArrayList positions = new IntArrayList();
+    private final IntArrayList oldColors = new IntArrayList();
+    private final IntArrayList newColors = new IntArrayList();
+    private final IntArrayList colors = new IntArrayList();
+    private final Map<Integer, Integer> colorIndices = Maps.newHashMap();
+    private boolean recording = false;
+
+    CanvasHistory(int pixelCount, long budget) {
+        this.budget = budget;
+        this.recordedAt = new int[pixelCount];
+        Arrays.fill(recordedAt, -1);
+    }
+
+    void beginStroke() {
+        endStroke();
+        recording = true;
+    }
+
+    /**
+     * Remembers a pixel changed by the current stroke. Only its color from before the stroke is kept.
+     */
+    void record(int position, int oldColor, int newColor) {
+        if(!recording){
+            return;
+        }
+        int at = recordedAt[position];
+        if(at >= 0){
+            newColors.set(at, colorIndex(newColor));
+        }
+        else{
+            recordedAt[position] = positions.size();
+            positions.add(position);
+            oldColors.add(colorIndex(oldColor));
+            newColors.add(colorIndex(newColor));
+        }
+    }
+
+    void endStroke() {
+        if(!recording){
+            return;
+        }
+        recording = false;
+        int count = positions.size();
+        if(count > 0){
+            Stroke stroke = new Stroke(count, colors.toIntArray());
+            for(int i = 0; i < count; i++){
+                int position = positions.getInt(i);
+                stroke.positions[i] = (short) position;
+                stroke.oldColors[i] = (char) oldColors.getInt(i);
+                stroke.newColors[i] = (char) newColors.getInt(i);
+                recordedAt[position] = -1;
+            }
+            positions.clear();
+            oldColors.clear();
+            newColors.clear();
+            colors.clear();
+            colorIndices.clear();
+
+            clearRedo();
+            push(undoStack, stroke);
+            trim();
+        }
+    }
+
+    /**
+     * Reverts the last stroke
+     * @param changed called with the position of every pixel that was changed
+     * @return false if there was nothing to undo
+     */
+    boolean undo(int[] pixels, IntConsumer changed) {
+        endStroke();
+        Stroke stroke = undoStack.pollLast();
+        if(stroke == null){
+            return false;
+        }
+        for(int i = stroke.positions.length - 1; i >= 0; i--){
+            int position = stroke.positions[i] & 0xFFFF;
+            pixels[position] = stroke.colors[stroke.oldColors[i]];
+            changed.accept(position);
+        }
+        redoStack.addLast(stroke);
+        return true;
+    }
+
+    /**
+     * Applies the last undone stroke again
+     * @param changed called with the position of every pixel that was changed
+     * @return false if there was nothing to redo
+     */
+    boolean redo(int[] pixels, IntConsumer changed) {
+        endStroke();
+        Stroke stroke = redoStack.pollLast();
+        if(stroke == null){
+            return false;
+        }
+        for(int i = 0; i < stroke.positions.length; i++){
+            int position = stroke.positions[i] & 0xFFFF;
+            pixels[position] = stroke.colors[stroke.newColors[i]];
+            changed.accept(position);
+        }
+        undoStack.addLast(stroke);
+        return true;
+    }
+
+    void clear() {
+        endStroke();
+        undoStack.clear();
+        redoStack.clear();
+        size = 0;
+    }
+
+    private int colorIndex(int color) {
+        Integer index = colorIndices.get(color);
+        if(index == null){
+            index = colors.size();
+            colors.add(color);
+            colorIndices.put(color, index);
+        }
+        return index;
+    }
+
+    private void push(Deque<Stroke> stack, Stroke stroke) {
+        stack.addLast(stroke);
+        size += stroke.size();
+    }
+
+    private void clearRedo() {
+        for(Stroke stroke : redoStack){
+            size -= stroke.size();
+        }
+        redoStack.clear();
+    }
+
+    private void trim() {
+        while(size > budget && undoStack.size() > 1){
+            size -= undoStack.pollFirst().size();
+        }
+    }
+
+    private static class Stroke {
+        private final short[] positions;
+        private final char[] oldColors;
+        private final char[] newColors;
+        private final int[] colors;
+
+        private Stroke(int count, int[] colors) {
+            this.positions = new short[count];
+            this.oldColors = new char[count];
+            this.newColors = new char[count];
+            this.colors = colors;
+        }
+
+        private long size() {
+            return STROKE_OVERHEAD + positions.length * 6L + colors.length * 4L;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package xerca.xercapaint.client;
+
+import com.mojang.blaze3d.matrix.MatrixStack;
+import com.mojang.blaze3d.systems.RenderSystem;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.gui.AbstractGui;
+import net.minecraft.client.renderer.texture.DynamicTexture;
+import net.minecraft.client.renderer.texture.NativeImage;
+import net.minecraft.util.ResourceLocation;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.api.distmarker.OnlyIn;
+
+/**
+ * Texture of the canvas shown in a gui, so the whole canvas is drawn as a single quad.
+ * Only the pixels marked as changed since the last frame are uploaded again.
+ */
+@OnlyIn(Dist.CLIENT)
+public class CanvasTexture implements AutoCloseable {
+    private final int width;
+    private final int height;
+    private final DynamicTexture texture;
+    private final ResourceLocation location;
+    private int dirtyMinX;
+    private int dirtyMinY;
+    private int dirtyMaxX;
+    private int dirtyMaxY;
+
+    CanvasTexture(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.texture = new DynamicTexture(width, height, true);
+        this.location = Minecraft.getInstance().getTextureManager().getDynamicTextureLocation("canvas_gui", texture);
+        markAllDirty();
+    }
+
+    void markDirty(int x, int y) {
+        dirtyMinX = Math.min(dirtyMinX, x);
+        dirtyMinY = Math.min(dirtyMinY, y);
+        dirtyMaxX = Math.max(dirtyMaxX, x);
+        dirtyMaxY = Math.max(dirtyMaxY, y);
+    }
+
+    void markAllDirty() {
+        dirtyMinX = 0;
+        dirtyMinY = 0;
+        dirtyMaxX = width - 1;
+        dirtyMaxY = height - 1;
+    }
+
+    /**
+     * Uploads the changed pixels and draws the canvas, leaving the canvas texture bound.
+     * @param pixels ARGB pixels, row by row
+     */
+    void draw(MatrixStack matrixStack, int[] pixels, int x, int y, int drawWidth, int drawHeight) {
+        NativeImage image = texture.getTextureData();
+        if(image != null && dirtyMinX <= dirtyMaxX && dirtyMinY <= dirtyMaxY){
+            for(int i = dirtyMinY; i <= dirtyMaxY; i++){
+                for(int j = dirtyMinX; j <= dirtyMaxX; j++){
+                    int color = pixels[i*width + j];
+                    // NativeImage takes ABGR
+                    image.setPixelRGBA(j, i, 0xFF000000 | (color & 0xFF) << 16 | (color & 0xFF00) | (color >> 16) & 0xFF);
+                }
+            }
+            texture.bindTexture();
+            image.uploadTextureSub(0, dirtyMinX, dirtyMinY, dirtyMinX, dirtyMinY, dirtyMaxX - dirtyMinX + 1, dirtyMaxY - dirtyMinY + 1, false, false);
+            dirtyMinX = dirtyMinY = Integer.MAX_VALUE;
+            dirtyMaxX = dirtyMaxY = -1;
+        }
+
+        Minecraft.getInstance().getTextureManager().bindTexture(location);
+        RenderSystem.color4f(1.0F, 1.0F, 1.0F, 1.0F);
+        AbstractGui.blit(matrixStack, x, y, drawWidth, drawHeight, 0, 0, width, height, width, height);
+    }
+
+    @Override
+    public void close() {
+        Minecraft.getInstance().getTextureManager().deleteTexture(location);
+        texture.close();
+    }
+}
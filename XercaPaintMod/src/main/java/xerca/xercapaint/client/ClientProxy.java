@@ -9,6 +9,7 @@ import net.minecraft.item.ItemModelsProperties;
 import net.minecraft.item.ItemStack;
 import net.minecraft.nbt.CompoundNBT;
 import net.minecraft.util.ResourceLocation;
+import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.text.TranslationTextComponent;
 import net.minecraft.world.World;
 import net.minecraftforge.api.distmarker.Dist;
@@ -20,6 +21,7 @@ import net.minecraftforge.fml.event.lifecycle.FMLClientSetupEvent;
 import xerca.xercapaint.common.Proxy;
 import xerca.xercapaint.common.XercaPaint;
 import xerca.xercapaint.common.entity.Entities;
+import xerca.xercapaint.common.entity.EntityCanvas;
 import xerca.xercapaint.common.item.ItemCanvas;
 import xerca.xercapaint.common.item.ItemPalette;
 import xerca.xercapaint.common.item.Items;
@@ -34,6 +36,17 @@ public class ClientProxy extends Proxy {
         RenderingRegistry.registerEntityRenderingHandler(Entities.CANVAS, new RenderEntityCanvas.RenderEntityCanvasFactory());
     }
 
+    @Override
+    public void requestPicture(String name, BlockPos pos) {
+        PictureRequestBatcher.request(name, pos);
+    }
+
+    @Nullable
+    @Override
+    public EntityCanvas.Picture getOrRequestPicture(String name, int version, BlockPos pos) {
+        return PictureRequestBatcher.getOrRequest(name, version, pos);
+    }
+
     public void showCanvasGui(PlayerEntity player){
         final ItemStack heldItem = player.getHeldItemMainhand();
         final ItemStack offhandItem = player.getHeldItemOffhand();
@@ -2,6 +2,7 @@ package xerca.xercapaint.client;
 
 import com.mojang.blaze3d.matrix.MatrixStack;
 import com.mojang.blaze3d.platform.GlStateManager;
+import net.minecraft.client.Minecraft;
 import net.minecraft.client.gui.widget.button.Button;
 import net.minecraft.client.resources.I18n;
 import net.minecraft.entity.player.PlayerEntity;
@@ -15,14 +16,18 @@ import net.minecraftforge.api.distmarker.Dist;
 import net.minecraftforge.api.distmarker.OnlyIn;
 import org.lwjgl.glfw.GLFW;
 import xerca.xercapaint.common.CanvasType;
+import xerca.xercapaint.common.Config;
 import xerca.xercapaint.common.PaletteUtil;
+import xerca.xercapaint.common.PixelCodec;
 import xerca.xercapaint.common.SoundEvents;
 import xerca.xercapaint.common.XercaPaint;
+import xerca.xercapaint.common.entity.EntityCanvas;
+import xerca.xercapaint.common.packets.CanvasDeltaPacket;
+import xerca.xercapaint.common.packets.CanvasDeltaPacketHandler;
 import xerca.xercapaint.common.packets.CanvasUpdatePacket;
 
-import java.util.ArrayDeque;
+import javax.annotation.Nullable;
 import java.util.Arrays;
-import java.util.Deque;
 
 import static org.lwjgl.glfw.GLFW.*;
 
@@ -38,8 +43,6 @@ public class GuiCanvasEdit extends BasePalette {
     private int canvasPixelWidth;
     private int canvasPixelHeight;
     private int brushSize = 0;
-    private boolean touchedCanvas = false;
-    private boolean undoStarted = false;
     private boolean gettingSigned;
     private Button buttonSign;
     private Button buttonCancel;
@@ -56,6 +59,14 @@ public class GuiCanvasEdit extends BasePalette {
     private String canvasTitle = "";
     private String name = "";
     private int version = 0;
+    // Set while the picture of an existing canvas is still on its way from the server
+    private boolean waitingForPicture = false;
+    // Bounds of the pixels changed since they were last sent to the server, empty when min > max
+    private int dirtyMinX = Integer.MAX_VALUE;
+    private int dirtyMinY = Integer.MAX_VALUE;
+    private int dirtyMaxX = -1;
+    private int dirtyMaxY = -1;
+    private CanvasTexture canvasTexture;
 
     private static final Vector2f[] outlinePoss1 = {
             new Vector2f(0.f, 199.0f),
@@ -71,8 +82,8 @@ public class GuiCanvasEdit extends BasePalette {
             new Vector2f(169.f, 199.0f),
     };
 
-    private static final int maxUndoLength = 16;
-    private Deque<int[]> undoStack = new ArrayDeque<>(maxUndoLength);
+    private static final int autosaveInterval = 200;
+    private final CanvasHistory history;
 
     protected GuiCanvasEdit(PlayerEntity player, CompoundNBT canvasTag, CompoundNBT paletteTag, ITextComponent title, CanvasType canvasType) {
         super(title, paletteTag);
@@ -90,14 +101,19 @@ public class GuiCanvasEdit extends BasePalette {
         }
 
         this.editingPlayer = player;
+        this.history = new CanvasHistory(canvasPixelArea, Config.getUndoMemoryBytes());
         if (canvasTag != null && !canvasTag.isEmpty()) {
-            int[] nbtPixels = canvasTag.getIntArray("pixels");
             this.authorName = canvasTag.getString("author");
             this.canvasTitle = canvasTag.getString("title");
             this.name = canvasTag.getString("name");
             this.version = canvasTag.getInt("v");
 
-            this.pixels =  Arrays.copyOfRange(nbtPixels, 0, canvasPixelArea);
+            if(PixelCodec.hasPixels(canvasTag)){
+                this.pixels = Arrays.copyOfRange(PixelCodec.readPixels(canvasTag), 0, canvasPixelArea);
+            }
+            else if(!this.name.isEmpty()){
+                this.waitingForPicture = !setPicture(PictureRequestBatcher.getOrRequest(name, version, player.getPosition()));
+            }
         } else {
             this.isSigned = false;
         }
@@ -106,8 +122,10 @@ public class GuiCanvasEdit extends BasePalette {
             this.pixels = new int[canvasPixelArea];
             Arrays.fill(this.pixels, basicColors[15].rgbVal());
 
-            long secs = System.currentTimeMillis()/1000;
-            this.name = "" + player.getUniqueID().toString() + "_" + secs;
+            if(!waitingForPicture){
+                long secs = System.currentTimeMillis()/1000;
+                this.name = "" + player.getUniqueID().toString() + "_" + secs;
+            }
         }
 
         if(paletteComplete){
@@ -115,13 +133,39 @@ public class GuiCanvasEdit extends BasePalette {
         }
     }
 
+    private boolean setPicture(@Nullable EntityCanvas.Picture picture) {
+        if(picture != null && picture.version >= version){
+            this.pixels = Arrays.copyOfRange(picture.pixels, 0, canvasPixelHeight*canvasPixelWidth);
+            if(canvasTexture != null){
+                canvasTexture.markAllDirty();
+            }
+            return true;
+        }
+        return false;
+    }
+
     private int getPixelAt(int x, int y){
         return this.pixels[y*canvasPixelWidth + x];
     }
 
     private void setPixelAt(int x, int y, PaletteUtil.Color color){
         if(x >= 0 && y >= 0 && x < canvasPixelWidth && y < canvasPixelHeight){
-            this.pixels[y*canvasPixelWidth + x] = color.rgbVal();
+            int position = y*canvasPixelWidth + x;
+            int newColor = color.rgbVal();
+            if(this.pixels[position] != newColor){
+                history.record(position, this.pixels[position], newColor);
+                this.pixels[position] = newColor;
+                pixelChanged(position);
+            }
+        }
+    }
+
+    private void pixelChanged(int position){
+        int x = position % canvasPixelWidth;
+        int y = position / canvasPixelWidth;
+        markDirty(x, y, x, y);
+        if(canvasTexture != null){
+            canvasTexture.markDirty(x, y);
         }
     }
 
@@ -208,6 +252,10 @@ public class GuiCanvasEdit extends BasePalette {
 
         brushMeterX = canvasX + canvasWidth + 2;
 
+        if(canvasTexture == null){
+            canvasTexture = new CanvasTexture(canvasPixelWidth, canvasPixelHeight);
+        }
+
         // Hide mouse cursor
         GLFW.glfwSetInputMode(this.getMinecraft().getMainWindow().getHandle(), GLFW_CURSOR, GLFW_CURSOR_HIDDEN);
 
@@ -255,6 +303,13 @@ public class GuiCanvasEdit extends BasePalette {
     @Override
     public void tick() {
         ++this.updateCount;
+        if(waitingForPicture && setPicture(EntityCanvas.PICTURES.get(name))){
+            waitingForPicture = false;
+            history.clear();
+        }
+        if(updateCount % autosaveInterval == 0 && !waitingForPicture && !gettingSigned){
+            sendPixelChanges();
+        }
         super.tick();
     }
 
@@ -268,13 +323,8 @@ public class GuiCanvasEdit extends BasePalette {
         }
 
         // Draw the canvas
-        for(int i=0; i<canvasPixelHeight; i++){
-            for(int j=0; j<canvasPixelWidth; j++){
-                int y = canvasY + i* canvasPixelScale;
-                int x = canvasX + j* canvasPixelScale;
-                fill(matrixStack, x, y, x + canvasPixelScale, y + canvasPixelScale, getPixelAt(j, i));
-            }
-        }
+        canvasTexture.draw(matrixStack, pixels, canvasX, canvasY, canvasWidth, canvasHeight);
+        Minecraft.getInstance().getTextureManager().bindTexture(paletteTextures);
 
         // Draw brush meter
         if(!gettingSigned){
@@ -411,9 +461,16 @@ public class GuiCanvasEdit extends BasePalette {
             return true;
         }
         else {
-            if (keyCode == GLFW.GLFW_KEY_Z && (modifiers & GLFW.GLFW_MOD_CONTROL) == GLFW.GLFW_MOD_CONTROL) {
-                if (undoStack.size() > 0) {
-                    pixels = undoStack.pop();
+            boolean control = (modifiers & GLFW.GLFW_MOD_CONTROL) == GLFW.GLFW_MOD_CONTROL;
+            boolean shift = (modifiers & GLFW.GLFW_MOD_SHIFT) == GLFW.GLFW_MOD_SHIFT;
+            if (control && ((keyCode == GLFW.GLFW_KEY_Z && shift) || keyCode == GLFW.GLFW_KEY_Y)) {
+                if (history.redo(pixels, this::pixelChanged)) {
+                    dirty = true;
+                }
+                return true;
+            } else if (control && keyCode == GLFW.GLFW_KEY_Z) {
+                if (history.undo(pixels, this::pixelChanged)) {
+                    dirty = true;
                 }
                 return true;
             } else {
@@ -461,12 +518,7 @@ public class GuiCanvasEdit extends BasePalette {
         int mouseX = (int)Math.floor(posX);
         int mouseY = (int)Math.floor(posY);
 
-        undoStarted = true;
-        touchedCanvas = false;
-        if(undoStack.size() >= maxUndoLength){
-            undoStack.removeLast();
-        }
-        undoStack.push(pixels.clone());
+        history.beginStroke();
 
         if(inCanvas(mouseX, mouseY)){
             if(isPickingColor){
@@ -495,7 +547,6 @@ public class GuiCanvasEdit extends BasePalette {
     }
 
     private void clickedCanvas(int mouseX, int mouseY, int mouseButton){
-        touchedCanvas = true;
         if(mouseButton == GLFW_MOUSE_BUTTON_LEFT){
             setPixelsAt(mouseX, mouseY, currentColor, brushSize);
         }else if(mouseButton == GLFW_MOUSE_BUTTON_RIGHT){
@@ -511,10 +562,7 @@ public class GuiCanvasEdit extends BasePalette {
             return super.superMouseReleased(posX, posY, mouseButton);
         }
 
-        if(undoStarted && !touchedCanvas){
-            undoStarted = false;
-            undoStack.removeFirst();
-        }
+        history.endStroke();
 
         if(brushSound != null){
             brushSound.stopSound();
@@ -542,19 +590,68 @@ public class GuiCanvasEdit extends BasePalette {
     }
 
     private boolean inCanvas(int x, int y) {
-        return x < canvasX + canvasWidth && x >= canvasX && y < canvasY + canvasHeight && y >= canvasY;
+        return !waitingForPicture && x < canvasX + canvasWidth && x >= canvasX && y < canvasY + canvasHeight && y >= canvasY;
     }
 
     private boolean inBrushMeter(int x, int y) {
         return x < brushMeterX + brushSpriteSize && x >= brushMeterX && y < brushMeterY + brushSpriteSize*4 && y >= brushMeterY;
     }
 
+    private void markDirty(int minX, int minY, int maxX, int maxY) {
+        dirtyMinX = Math.min(dirtyMinX, minX);
+        dirtyMinY = Math.min(dirtyMinY, minY);
+        dirtyMaxX = Math.max(dirtyMaxX, maxX);
+        dirtyMaxY = Math.max(dirtyMaxY, maxY);
+    }
+
+    /**
+     * Sends the rectangle of pixels changed since the last call as the next version of the canvas
+     */
+    private void sendPixelChanges() {
+        if(dirtyMinX > dirtyMaxX || dirtyMinY > dirtyMaxY){
+            return;
+        }
+        // The server starts a new canvas from the whole picture
+        if(version == 0){
+            markDirty(0, 0, canvasPixelWidth - 1, canvasPixelHeight - 1);
+        }
+        int width = dirtyMaxX - dirtyMinX + 1;
+        int height = dirtyMaxY - dirtyMinY + 1;
+        int[] changed = new int[width*height];
+        for(int i = 0; i < height; i++){
+            System.arraycopy(pixels, (dirtyMinY + i)*canvasPixelWidth + dirtyMinX, changed, i*width, width);
+        }
+
+        CanvasDeltaPacket pack = new CanvasDeltaPacket(name, canvasType, version, version + 1, dirtyMinX, dirtyMinY, width, height, changed);
+        XercaPaint.NETWORK_HANDLER.sendToServer(pack);
+        version++;
+
+        // The item only keeps the name and version, so remember the pixels for drawing it
+        if(!CanvasDeltaPacketHandler.applyToCache(pack)){
+            EntityCanvas.PICTURES.put(name, new EntityCanvas.Picture(version, pixels.clone()));
+            PictureDiskCache.save(name, version, pixels.clone());
+        }
+
+        dirtyMinX = dirtyMinY = Integer.MAX_VALUE;
+        dirtyMaxX = dirtyMaxY = -1;
+    }
+
     @Override
     public void onClose() {
-        if (dirty) {
-            version ++;
-            CanvasUpdatePacket pack = new CanvasUpdatePacket(pixels, isSigned, canvasTitle, name, version, customColors, canvasType);
-            XercaPaint.NETWORK_HANDLER.sendToServer(pack);
+        if (canvasTexture != null) {
+            canvasTexture.close();
+            canvasTexture = null;
+        }
+        if (!waitingForPicture) {
+            if (dirty && version == 0) {
+                // Even a blank new canvas gets created when it is signed
+                markDirty(0, 0, canvasPixelWidth - 1, canvasPixelHeight - 1);
+            }
+            sendPixelChanges();
+            if (dirty) {
+                CanvasUpdatePacket pack = new CanvasUpdatePacket(isSigned, canvasTitle, name, customColors, canvasType);
+                XercaPaint.NETWORK_HANDLER.sendToServer(pack);
+            }
         }
     }
 }
\ No newline at end of file
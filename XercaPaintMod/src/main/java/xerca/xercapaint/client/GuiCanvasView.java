@@ -1,14 +1,20 @@
 package xerca.xercapaint.client;
 
 import com.mojang.blaze3d.matrix.MatrixStack;
+import net.minecraft.client.Minecraft;
 import net.minecraft.client.gui.screen.Screen;
 import net.minecraft.client.resources.I18n;
+import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.text.ITextComponent;
 import net.minecraftforge.api.distmarker.Dist;
 import net.minecraftforge.api.distmarker.OnlyIn;
 import xerca.xercapaint.common.CanvasType;
+import xerca.xercapaint.common.PixelCodec;
+import xerca.xercapaint.common.entity.EntityCanvas;
 
+import javax.annotation.Nullable;
 import java.util.Arrays;
 
 @OnlyIn(Dist.CLIENT)
@@ -29,6 +35,8 @@ public class GuiCanvasView extends Screen {
     private String name = "";
     private int version = 0;
     private int generation = 0;
+    private int canvasPixelArea;
+    private CanvasTexture canvasTexture;
 
     protected GuiCanvasView(CompoundNBT canvasTag, ITextComponent title, CanvasType canvasType) {
         super(title);
@@ -37,34 +45,63 @@ public class GuiCanvasView extends Screen {
         this.canvasPixelScale = canvasType == CanvasType.SMALL ? 10 : 5;
         this.canvasPixelWidth = CanvasType.getWidth(canvasType);
         this.canvasPixelHeight = CanvasType.getHeight(canvasType);
-        int canvasPixelArea = canvasPixelHeight*canvasPixelWidth;
+        this.canvasPixelArea = canvasPixelHeight*canvasPixelWidth;
         this.canvasWidth = this.canvasPixelWidth * this.canvasPixelScale;
         this.canvasHeight = this.canvasPixelHeight * this.canvasPixelScale;
 
         if (canvasTag != null && !canvasTag.isEmpty()) {
-            int[] nbtPixels = canvasTag.getIntArray("pixels");
             this.authorName = canvasTag.getString("author");
             this.canvasTitle = canvasTag.getString("title");
             this.name = canvasTag.getString("name");
             this.version = canvasTag.getInt("v");
             this.generation = canvasTag.getInt("generation");
 
-            this.pixels =  Arrays.copyOfRange(nbtPixels, 0, canvasPixelArea);
+            if(PixelCodec.hasPixels(canvasTag)){
+                this.pixels = Arrays.copyOfRange(PixelCodec.readPixels(canvasTag), 0, canvasPixelArea);
+            }
+            else{
+                PlayerEntity player = Minecraft.getInstance().player;
+                setPicture(PictureRequestBatcher.getOrRequest(name, version, player == null ? BlockPos.ZERO : player.getPosition()));
+            }
         } else {
             this.isSigned = false;
         }
     }
 
+    private void setPicture(@Nullable EntityCanvas.Picture picture) {
+        if(picture != null && picture.version >= version){
+            this.pixels = Arrays.copyOfRange(picture.pixels, 0, canvasPixelArea);
+            if(canvasTexture != null){
+                canvasTexture.markAllDirty();
+            }
+        }
+    }
+
+    @Override
+    public void tick() {
+        // The picture may still be on its way from the server
+        if(pixels == null && !name.isEmpty()){
+            setPicture(EntityCanvas.PICTURES.get(name));
+        }
+    }
+
     @Override
     public void init() {
         canvasX = (this.width - canvasWidth) / 2;
+        if(canvasTexture == null){
+            canvasTexture = new CanvasTexture(canvasPixelWidth, canvasPixelHeight);
+        }
         if(canvasType.equals(CanvasType.LONG)){
             canvasY += 40;
         }
     }
 
-    private int getPixelAt(int x, int y){
-        return (this.pixels == null) ? 0xFFF9FFFE : this.pixels[y*canvasPixelWidth + x];
+    @Override
+    public void onClose() {
+        if(canvasTexture != null){
+            canvasTexture.close();
+            canvasTexture = null;
+        }
     }
 
     @Override
@@ -74,14 +111,13 @@ public class GuiCanvasView extends Screen {
 
     @Override
     public void render(MatrixStack matrixStack, int mouseX, int mouseY, float f) {
-        for(int i=0; i<canvasPixelHeight; i++){
-            for(int j=0; j<canvasPixelWidth; j++){
-                int x = canvasX + j*canvasPixelScale;
-                int y = canvasY + i*canvasPixelScale;
-                fill(matrixStack, x, y, x+canvasPixelScale, y+canvasPixelScale, getPixelAt(j, i));
-            }
+        if(pixels == null){
+            fill(matrixStack, canvasX, canvasY, canvasX + canvasWidth, canvasY + canvasHeight, 0xFFF9FFFE);
         }
-        
+        else{
+            canvasTexture.draw(matrixStack, pixels, canvasX, canvasY, canvasWidth, canvasHeight);
+        }
+
         if(generation > 0 && !canvasTitle.isEmpty()){
             String title = canvasTitle + " " + I18n.format("canvas.byAuthor", authorName);
             String gen = "(" + I18n.format("canvas.generation." + (generation - 1)) + ")";
@@ -0,0 +1,302 @@
+package xerca.xercapaint.client;
+
+import net.minecraft.client.Minecraft;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.api.distmarker.OnlyIn;
+import net.minecraftforge.client.event.ClientPlayerNetworkEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import net.minecraftforge.fml.loading.FMLPaths;
+import xerca.xercapaint.common.Config;
+import xerca.xercapaint.common.PixelCodec;
+import xerca.xercapaint.common.XercaPaint;
+import xerca.xercapaint.common.entity.EntityCanvas;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Keeps received pictures in the game directory so they don't have to be downloaded again after reconnecting.
+ *
+ * Each picture is a file of its own, spread over 256 sub directories. Files are written next to their target and then
+ * moved over it, so a crash never leaves a half written picture behind, and anything unreadable is simply deleted.
+ * Reads, writes and the initial directory scan all run on a background thread, and pictures that were read are handed
+ * back on the main thread. The scan is started when the player joins a server. Until it has finished the cache doesn't
+ * know any picture, so they are asked from the server instead.
+ */
+@OnlyIn(Dist.CLIENT)
+@Mod.EventBusSubscriber(modid = XercaPaint.MODID, value = Dist.CLIENT)
+public class PictureDiskCache {
+    private static final int MAGIC = 0x58504331;
+    private static final String EXTENSION = ".pic";
+    private static final Path directory = FMLPaths.GAMEDIR.get().resolve("xercapaint_cache");
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "Canvas Disk Cache");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // File key to entry, least recently used first
+    private static final LinkedHashMap<String, Entry> index = new LinkedHashMap<>(256, 0.75f, true);
+    private static long size = 0;
+    private static Future<?> scanned = null;
+
+    /**
+     * Reads a picture in the background if the cache has the given version of it
+     *
+     * @param loaded called on the main thread with the picture, or with null if its file turned out to be unreadable
+     * @return false if the cache can't have the picture, without calling loaded
+     */
+    public static boolean load(String name, int version, Consumer<EntityCanvas.Picture> loaded) {
+        if(!isEnabled()){
+            return false;
+        }
+        init();
+        if(!scanned.isDone()){
+            return false;
+        }
+        String key = fileKey(name);
+        Entry entry;
+        synchronized (index) {
+            entry = index.get(key);
+        }
+        if(entry == null || entry.version < version){
+            return false;
+        }
+
+        executor.execute(() -> {
+            EntityCanvas.Picture picture = read(key, entry, name);
+            Minecraft.getInstance().execute(() -> loaded.accept(picture));
+        });
+        return true;
+    }
+
+    @Nullable
+    private static EntityCanvas.Picture read(String key, Entry entry, String name) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(entry.path)))) {
+            if(in.readInt() != MAGIC || !in.readUTF().equals(name)){
+                throw new IOException("Header mismatch");
+            }
+            int fileVersion = in.readInt();
+            byte[] data = new byte[in.readInt()];
+            in.readFully(data);
+            EntityCanvas.Picture picture = new EntityCanvas.Picture(fileVersion, PixelCodec.decode(data, PixelCodec.MAX_PIXELS));
+            touch(entry.path);
+            return picture;
+        } catch (IOException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            XercaPaint.LOGGER.warn("Dropping unreadable cached picture " + entry.path + ": " + e.getMessage());
+            remove(key, entry);
+            return null;
+        }
+    }
+
+    public static void save(String name, int version, int[] pixels) {
+        if(!isEnabled()){
+            return;
+        }
+        init();
+        executor.execute(() -> write(name, version, pixels));
+    }
+
+    private static boolean isEnabled() {
+        return Config.getDiskCacheBytes() > 0;
+    }
+
+    private static void init() {
+        if(scanned == null){
+            scanned = executor.submit(PictureDiskCache::scan);
+        }
+    }
+
+    // Canvases come right after joining, so the index is read before they do
+    @SubscribeEvent
+    public static void onLoggedIn(ClientPlayerNetworkEvent.LoggedInEvent event) {
+        if(isEnabled()){
+            init();
+        }
+    }
+
+    private static void scan() {
+        List<Entry> found = new ArrayList<>();
+        List<Path> stale = new ArrayList<>();
+        try {
+            Files.createDirectories(directory);
+            try (Stream<Path> files = Files.walk(directory, 2)) {
+                files.forEach(p -> {
+                    String fileName = p.getFileName().toString();
+                    if(fileName.endsWith(EXTENSION)){
+                        Entry entry = Entry.fromPath(p);
+                        if(entry != null){
+                            found.add(entry);
+                        }
+                    }
+                    else if(fileName.endsWith(".tmp")){
+                        // Left behind by a write that never finished
+                        stale.add(p);
+                    }
+                });
+            }
+        } catch (IOException | UncheckedIOException e) {
+            XercaPaint.LOGGER.error("Could not read the picture cache directory: " + e.getMessage());
+        }
+
+        found.sort(Comparator.comparing(e -> e.lastUsed));
+        synchronized (index) {
+            for(Entry entry : found){
+                Entry current = index.get(entry.key);
+                if(current != null && current.version >= entry.version){
+                    if(!current.path.equals(entry.path)){
+                        stale.add(entry.path);
+                    }
+                    continue;
+                }
+                if(current != null){
+                    size -= current.size;
+                    stale.add(current.path);
+                }
+                index.put(entry.key, entry);
+                size += entry.size;
+            }
+        }
+        for(Path path : stale){
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException ignored) {
+            }
+        }
+        trim();
+    }
+
+    private static void write(String name, int version, int[] pixels) {
+        String key = fileKey(name);
+        Path target = directory.resolve(segment(key)).resolve(key + "." + version + EXTENSION);
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(target.getParent());
+            byte[] data = PixelCodec.encode(pixels);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeUTF(name);
+                out.writeInt(version);
+                out.writeInt(data.length);
+                out.write(data);
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            Entry entry = new Entry(key, version, target, Files.size(target), System.currentTimeMillis());
+            Entry old;
+            synchronized (index) {
+                old = index.put(key, entry);
+                if(old != null){
+                    size -= old.size;
+                }
+                size += entry.size;
+            }
+            if(old != null && !old.path.equals(target)){
+                Files.deleteIfExists(old.path);
+            }
+            trim();
+        } catch (IOException e) {
+            XercaPaint.LOGGER.warn("Could not cache picture " + name + ": " + e.getMessage());
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static void trim() {
+        long budget = Config.getDiskCacheBytes();
+        List<Entry> removed = new ArrayList<>();
+        synchronized (index) {
+            Iterator<Entry> it = index.values().iterator();
+            while(size > budget && it.hasNext()){
+                Entry entry = it.next();
+                it.remove();
+                size -= entry.size;
+                removed.add(entry);
+            }
+        }
+        for(Entry entry : removed){
+            try {
+                Files.deleteIfExists(entry.path);
+            } catch (IOException e) {
+                XercaPaint.LOGGER.warn("Could not delete cached picture " + entry.path + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static void remove(String key, Entry entry) {
+        synchronized (index) {
+            if(index.get(key) == entry){
+                index.remove(key);
+                size -= entry.size;
+            }
+        }
+        executor.execute(() -> {
+            try {
+                Files.deleteIfExists(entry.path);
+            } catch (IOException ignored) {
+            }
+        });
+    }
+
+    private static void touch(Path path) {
+        try {
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static String fileKey(String name) {
+        return name.replaceAll("[^A-Za-z0-9_\\-]", "_") + "-" + Integer.toHexString(name.hashCode());
+    }
+
+    private static String segment(String key) {
+        return String.format("%02x", key.hashCode() & 0xFF);
+    }
+
+    private static class Entry {
+        private final String key;
+        private final int version;
+        private final Path path;
+        private final long size;
+        private final long lastUsed;
+
+        private Entry(String key, int version, Path path, long size, long lastUsed) {
+            this.key = key;
+            this.version = version;
+            this.path = path;
+            this.size = size;
+            this.lastUsed = lastUsed;
+        }
+
+        // File names look like <key>.<version>.pic
+        @Nullable
+        private static Entry fromPath(Path path) {
+            String fileName = path.getFileName().toString();
+            String base = fileName.substring(0, fileName.length() - EXTENSION.length());
+            int dot = base.lastIndexOf('.');
+            if(dot <= 0){
+                return null;
+            }
+            try {
+                int version = Integer.parseInt(base.substring(dot + 1));
+                return new Entry(base.substring(0, dot), version, path, Files.size(path), Files.getLastModifiedTime(path).toMillis());
+            } catch (NumberFormatException | IOException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package xerca.xercapaint.client;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import net.minecraft.client.Minecraft;
+import net.minecraft.util.math.BlockPos;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.api.distmarker.OnlyIn;
+import net.minecraftforge.client.event.ClientPlayerNetworkEvent;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import xerca.xercapaint.common.XercaPaint;
+import xerca.xercapaint.common.entity.EntityCanvas;
+import xerca.xercapaint.common.packets.PictureRequestPacket;
+
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Gathers the pictures that are found missing during a tick and asks for all of them at once at the end of it.
+ * A picture the server couldn't send is asked for again after a while.
+ */
+@OnlyIn(Dist.CLIENT)
+@Mod.EventBusSubscriber(modid = XercaPaint.MODID, value = Dist.CLIENT)
+public class PictureRequestBatcher {
+    private static final int RETRY_TICKS = 200;
+    private static final Map<String, BlockPos> pending = Maps.newLinkedHashMap();
+    // Pictures the server didn't send, to the tick they can be asked for again
+    private static final Map<String, Long> missing = Maps.newHashMap();
+    // Pictures being read from the disk cache
+    private static final Set<String> loading = Sets.newHashSet();
+    private static long ticks = 0;
+
+    /**
+     * Asks for a picture unless it was already asked for, or was found missing a short while ago
+     */
+    public static void request(String name, BlockPos pos) {
+        if(loading.contains(name)){
+            return;
+        }
+        Long retry = missing.get(name);
+        if(retry != null){
+            if(retry > ticks){
+                return;
+            }
+            missing.remove(name);
+        }
+        if(EntityCanvas.PICTURE_REQUESTS.add(name)){
+            pending.put(name, pos);
+        }
+    }
+
+    public static void onMissing(String name) {
+        EntityCanvas.PICTURE_REQUESTS.remove(name);
+        missing.put(name, ticks + RETRY_TICKS);
+    }
+
+    /**
+     * Looks for the picture in memory, and otherwise starts reading it from disk or asks the server for it if the disk
+     * cache doesn't have the given version. A picture read from disk is put into the picture cache when it arrives.
+     * @return the best picture known in memory, which may be older than asked for, or null
+     */
+    @Nullable
+    public static EntityCanvas.Picture getOrRequest(String name, int version, BlockPos pos) {
+        EntityCanvas.Picture picture = EntityCanvas.PICTURES.get(name);
+        if((picture == null || picture.version < version) && !loading.contains(name) && !EntityCanvas.PICTURE_REQUESTS.contains(name)){
+            if(PictureDiskCache.load(name, version, cached -> onLoaded(name, pos, cached))){
+                loading.add(name);
+            }
+            else{
+                request(name, pos);
+            }
+        }
+        return picture;
+    }
+
+    private static void onLoaded(String name, BlockPos pos, @Nullable EntityCanvas.Picture cached) {
+        if(!loading.remove(name)){
+            // Logged out in the meantime
+            return;
+        }
+        if(cached != null){
+            EntityCanvas.PICTURES.putIfNewer(name, cached.version, () -> cached.pixels);
+        }
+        else{
+            request(name, pos);
+        }
+    }
+
+    @SubscribeEvent
+    public static void onClientTick(TickEvent.ClientTickEvent event) {
+        if(event.phase != TickEvent.Phase.END){
+            return;
+        }
+        ticks++;
+        if(pending.isEmpty()){
+            return;
+        }
+        if(Minecraft.getInstance().getConnection() == null){
+            return;
+        }
+
+        List<String> names = Lists.newArrayList();
+        List<BlockPos> positions = Lists.newArrayList();
+        for(Map.Entry<String, BlockPos> entry : pending.entrySet()){
+            names.add(entry.getKey());
+            positions.add(entry.getValue());
+            if(names.size() == PictureRequestPacket.MAX_NAMES){
+                XercaPaint.NETWORK_HANDLER.sendToServer(new PictureRequestPacket(names, positions));
+                names = Lists.newArrayList();
+                positions = Lists.newArrayList();
+            }
+        }
+        if(!names.isEmpty()){
+            XercaPaint.NETWORK_HANDLER.sendToServer(new PictureRequestPacket(names, positions));
+        }
+        pending.clear();
+    }
+
+    @SubscribeEvent
+    public static void onLoggedOut(ClientPlayerNetworkEvent.LoggedOutEvent event) {
+        pending.clear();
+        missing.clear();
+        loading.clear();
+        EntityCanvas.PICTURE_REQUESTS.clear();
+    }
+}
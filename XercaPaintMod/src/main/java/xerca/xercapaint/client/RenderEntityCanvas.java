@@ -5,30 +5,41 @@ import com.mojang.blaze3d.matrix.MatrixStack;
 import com.mojang.blaze3d.vertex.IVertexBuilder;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.renderer.*;
+import net.minecraft.client.renderer.culling.ClippingHelper;
 import net.minecraft.client.renderer.entity.EntityRenderer;
 import net.minecraft.client.renderer.entity.EntityRendererManager;
-import net.minecraft.client.renderer.texture.DynamicTexture;
 import net.minecraft.client.renderer.texture.OverlayTexture;
 import net.minecraft.client.renderer.texture.TextureManager;
+import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.nbt.CompoundNBT;
 import net.minecraft.util.Direction;
 import net.minecraft.util.ResourceLocation;
+import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.vector.Matrix3f;
 import net.minecraft.util.math.vector.Matrix4f;
 import net.minecraft.util.math.vector.Vector3f;
+import net.minecraft.util.math.vector.Vector4f;
 import net.minecraftforge.api.distmarker.Dist;
 import net.minecraftforge.api.distmarker.OnlyIn;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
 import net.minecraftforge.fml.client.registry.IRenderFactory;
+import net.minecraftforge.fml.common.Mod;
+import xerca.xercapaint.common.Config;
 import xerca.xercapaint.common.PaletteUtil;
+import xerca.xercapaint.common.PixelCodec;
 import xerca.xercapaint.common.XercaPaint;
 import xerca.xercapaint.common.entity.EntityCanvas;
 
 import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 @OnlyIn(Dist.CLIENT)
 @ParametersAreNonnullByDefault
+@Mod.EventBusSubscriber(modid = XercaPaint.MODID, value = Dist.CLIENT)
 public class RenderEntityCanvas extends EntityRenderer<EntityCanvas> {
     static public RenderEntityCanvas theInstance;
     static private final ResourceLocation backLocation = new ResourceLocation("minecraft", "textures/block/birch_planks.png");
@@ -42,11 +53,16 @@ public class RenderEntityCanvas extends EntityRenderer<EntityCanvas> {
     }
 
     private final TextureManager textureManager;
+    private final CanvasAtlas atlas;
     private final Map<String, RenderEntityCanvas.Instance> loadedCanvases = Maps.newHashMap();
+    // Filled by the picture cache from any thread, drained on the render thread where textures can be closed
+    private final Queue<String> evictedCanvases = new ConcurrentLinkedQueue<>();
 
     RenderEntityCanvas(EntityRendererManager renderManager) {
         super(renderManager);
         this.textureManager = Minecraft.getInstance().textureManager;
+        this.atlas = new CanvasAtlas(textureManager, backLocation);
+        EntityCanvas.PICTURES.addEvictionListener(evictedCanvases::add);
     }
 
     @Nullable
@@ -55,13 +71,31 @@ public class RenderEntityCanvas extends EntityRenderer<EntityCanvas> {
         return getCanvasRendererInstance(entity).location;
     }
 
+    @Override
+    public boolean shouldRender(EntityCanvas entity, ClippingHelper camera, double camX, double camY, double camZ) {
+        double maxDistance = Config.getCanvasRenderDistance();
+        return entity.getDistanceSq(camX, camY, camZ) <= maxDistance*maxDistance && super.shouldRender(entity, camera, camX, camY, camZ);
+    }
+
     @Override
     public void render(EntityCanvas entity, float entityYaw, float partialTicks, MatrixStack matrixStackIn, IRenderTypeBuffer bufferIn, int packedLightIn) {
         super.render(entity, entityYaw, partialTicks, matrixStackIn, bufferIn, packedLightIn);
+        closeEvictedCanvases();
+        if(entity.getPicture() == null){
+            entity.requestPicture();
+        }
         getCanvasRendererInstance(entity).render(entity, entityYaw, entity.rotationPitch, matrixStackIn, bufferIn, entity.getHorizontalFacing(), packedLightIn);
     }
 
 
+    // Pictures on screen are protected from eviction frame by frame
+    @SubscribeEvent
+    public static void onRenderTick(TickEvent.RenderTickEvent event) {
+        if(event.phase == TickEvent.Phase.START){
+            EntityCanvas.PICTURES.beginFrame();
+        }
+    }
+
     public static class RenderEntityCanvasFactory implements IRenderFactory<EntityCanvas> {
         @Override
         public EntityRenderer<? super EntityCanvas> createRenderFor(EntityRendererManager manager) {
@@ -84,13 +118,19 @@ public class RenderEntityCanvas extends EntityRenderer<EntityCanvas> {
     RenderEntityCanvas.Instance getCanvasRendererInstance(CompoundNBT tag, int width, int height) {
         String name = tag.getString("name");
         int version = tag.getInt("v");
-        if(!EntityCanvas.PICTURES.containsKey(name) || EntityCanvas.PICTURES.get(name).version < version){
-            EntityCanvas.PICTURES.put(name, new EntityCanvas.Picture(version, tag.getIntArray("pixels")));
+        closeEvictedCanvases();
+        if(PixelCodec.hasPixels(tag)){
+            EntityCanvas.PICTURES.putIfNewer(name, version, () -> PixelCodec.readPixels(tag));
+        }
+        else{
+            PlayerEntity player = Minecraft.getInstance().player;
+            PictureRequestBatcher.getOrRequest(name, version, player == null ? BlockPos.ZERO : player.getPosition());
         }
         return getCanvasRendererInstance(name, version, width, height);
     }
 
     RenderEntityCanvas.Instance getCanvasRendererInstance(String name, int version, int width, int height) {
+        EntityCanvas.PICTURES.markDrawn(name);
         RenderEntityCanvas.Instance instance = this.loadedCanvases.get(name);
         if (instance == null) {
             instance = new Instance(name, version, width, height);
@@ -109,6 +149,19 @@ public class RenderEntityCanvas extends EntityRenderer<EntityCanvas> {
         return this.loadedCanvases.get(name);
     }
 
+    /**
+     * Closes the textures of canvases whose pictures were evicted from the picture cache
+     */
+    private void closeEvictedCanvases() {
+        String name;
+        while((name = evictedCanvases.poll()) != null) {
+            RenderEntityCanvas.Instance instance = this.loadedCanvases.remove(name);
+            if(instance != null) {
+                instance.close();
+            }
+        }
+    }
+
     /**
      * Clears the currently loaded maps and removes their corresponding textures
      */
@@ -122,6 +175,7 @@ public class RenderEntityCanvas extends EntityRenderer<EntityCanvas> {
 
     public void close() {
         this.clearLoadedCanvases();
+        this.atlas.close();
     }
 
     @OnlyIn(Dist.CLIENT)
@@ -131,7 +185,12 @@ public class RenderEntityCanvas extends EntityRenderer<EntityCanvas> {
         int height;
         boolean loaded;
         boolean started;
-        public final DynamicTexture canvasTexture;
+        // Average color of the picture, used for far away canvases
+        int averageRed = 255;
+        int averageGreen = 255;
+        int averageBlue = 255;
+        private final CanvasAtlas.Slot slot;
+        private final int[] texturePixels;
         public final ResourceLocation location;
 
         private Instance(String name, int version, int width, int height) {
@@ -139,8 +198,9 @@ public class RenderEntityCanvas extends EntityRenderer<EntityCanvas> {
             this.loaded = false;
             this.width = width;
             this.height = height;
-            this.canvasTexture = new DynamicTexture(width, height, true);
-            this.location = RenderEntityCanvas.this.textureManager.getDynamicTextureLocation("canvas/" + name, this.canvasTexture);
+            this.slot = atlas.allocate(width, height);
+            this.texturePixels = new int[width*height];
+            this.location = slot.getPage().getLocation();
 
             updateCanvasTexture(name, version);
         }
@@ -155,8 +215,9 @@ public class RenderEntityCanvas extends EntityRenderer<EntityCanvas> {
         private void updateCanvasTexture(String name, int version) {
             this.version = version;
             int[] pixels = EMPTY_PIXELS;
-            if(EntityCanvas.PICTURES.containsKey(name)){
-                pixels = EntityCanvas.PICTURES.get(name).pixels;
+            EntityCanvas.Picture picture = EntityCanvas.PICTURES.get(name);
+            if(picture != null){
+                pixels = picture.pixels;
                 loaded = true;
             }
             if(loaded || !started){
@@ -165,14 +226,18 @@ public class RenderEntityCanvas extends EntityRenderer<EntityCanvas> {
                     return;
                 }
 
-                for (int i = 0; i < height; ++i) {
-                    for (int j = 0; j < width; ++j) {
-                        int k = j + i * width;
-                        canvasTexture.getTextureData().setPixelRGBA(j, i, swapColor(pixels[k]));
-                    }
+                int red = 0, green = 0, blue = 0;
+                for (int k = 0; k < height*width; ++k) {
+                    texturePixels[k] = swapColor(pixels[k]);
+                    red += (pixels[k] >> 16) & 255;
+                    green += (pixels[k] >> 8) & 255;
+                    blue += pixels[k] & 255;
                 }
+                averageRed = red / (height*width);
+                averageGreen = green / (height*width);
+                averageBlue = blue / (height*width);
 
-                canvasTexture.updateDynamicTexture();
+                slot.upload(texturePixels);
             }
             this.started = true;
         }
@@ -218,63 +283,116 @@ public class RenderEntityCanvas extends EntityRenderer<EntityCanvas> {
 
             ms.scale(f, f, f);
 
-            textureManager.bindTexture(location);
-
             Matrix4f m = ms.getLast().getMatrix();
             mn = ms.getLast().getNormal();
-            IVertexBuilder vb = buffer.getBuffer(RenderType.getEntitySolid(this.location));
+            // The front, back and sides all come from the same atlas page, so they share one buffer batch
+            IVertexBuilder vb = buffer.getBuffer(slot.getPage().getRenderType());
+            CanvasAtlas.Slot back = slot.getPage().getBackSlot();
+            final float w = 32.0F*wScale;
+            final float h = 32.0F*hScale;
+
+            if(canvas == null){
+                drawFront(vb, m, mn, w, h, packedLight, xOffset, yOffset, zOffset);
+                drawBack(vb, m, mn, back, w, h, packedLight, xOffset, yOffset, zOffset);
+                drawSides(vb, m, mn, back, w, h, true, true, true, true, packedLight, xOffset, yOffset, zOffset);
+                ms.pop();
+                return;
+            }
 
-            // Draw the front
-            addVertex(vb, m, mn, 0.0F, 32.0F*hScale, -1.0F, 1.0F, 0.0F, packedLight, xOffset, yOffset, zOffset);
-            addVertex(vb, m, mn, 32.0F*wScale, 32.0F*hScale, -1.0F, 0.0F, 0.0F, packedLight, xOffset, yOffset, zOffset);
-            addVertex(vb, m, mn, 32.0F*wScale, 0.0F, -1.0F, 0.0F, 1.0F, packedLight, xOffset, yOffset, zOffset);
-            addVertex(vb, m, mn, 0.0F, 0.0F, -1.0F, 1.0F, 1.0F, packedLight, xOffset, yOffset, zOffset);
+            // The camera is at the origin of the view space, find where it is in the canvas' own space
+            Matrix4f inverse = m.copy();
+            inverse.invert();
+            Vector4f eye = new Vector4f(0.0F, 0.0F, 0.0F, 1.0F);
+            eye.transform(inverse);
 
-            vb = buffer.getBuffer(RenderType.getEntitySolid(backLocation));
-            // Draw the back and sides
-            final float sideWidth = 1.0F/16.0F;
-            textureManager.bindTexture(backLocation);
-            addVertex(vb, m, mn, 0.0D, 0.0D, 1.0D, 0.0F, 0.0F, packedLight, xOffset, yOffset, zOffset);
-            addVertex(vb, m, mn, 32.0D*wScale, 0.0D, 1.0D, 1.0F, 0.0F, packedLight, xOffset, yOffset, zOffset);
-            addVertex(vb, m, mn, 32.0D*wScale, 32.0D*hScale, 1.0D, 1.0F, 1.0F, packedLight, xOffset, yOffset, zOffset);
-            addVertex(vb, m, mn, 0.0D, 32.0D*hScale, 1.0D, 0.0F, 1.0F, packedLight, xOffset, yOffset, zOffset);
-
-            // Sides
-            addVertex(vb, m, mn, 0.0D, 0.0D, 1.0D, sideWidth, 0.0F, packedLight, xOffset, yOffset, zOffset);
-            addVertex(vb, m, mn, 0.0D, 32.0D*hScale, 1.0D, sideWidth, 1.0F, packedLight, xOffset, yOffset, zOffset);
-            addVertex(vb, m, mn, 0.0D, 32.0D*hScale, -1.0D, 0.0F, 1.0F, packedLight, xOffset, yOffset, zOffset);
-            addVertex(vb, m, mn, 0.0D, 0.0D, -1.0D, 0.0F, 0.0F, packedLight, xOffset, yOffset, zOffset);
-
-            addVertex(vb, m, mn, 0.0D, 32.0D*hScale, 1.0F, 0.0F, 0.0F, packedLight, xOffset, yOffset, zOffset);
-            addVertex(vb, m, mn, 32.0D*wScale, 32.0D*hScale, 1.0F, 1.0F, 0.0F, packedLight, xOffset, yOffset, zOffset);
-            addVertex(vb, m, mn, 32.0D*wScale, 32.0D*hScale, -1.0F, 1.0F, sideWidth, packedLight, xOffset, yOffset, zOffset);
-            addVertex(vb, m, mn, 0.0D, 32.0D*hScale, -1.0F, 0.0F, sideWidth, packedLight, xOffset, yOffset, zOffset);
-
-            addVertex(vb, m, mn, 32.0D*wScale, 0.0D, -1.0F, 0.0F, 0.0F, packedLight, xOffset, yOffset, zOffset);
-            addVertex(vb, m, mn, 32.0D*wScale, 32.0D*hScale, -1.0F, 0.0F, 1.0F, packedLight, xOffset, yOffset, zOffset);
-            addVertex(vb, m, mn, 32.0D*wScale, 32.0D*hScale, 1.0F, sideWidth, 1.0F, packedLight, xOffset, yOffset, zOffset);
-            addVertex(vb, m, mn, 32.0D*wScale, 0.0D, 1.0F, sideWidth, 0.0F, packedLight, xOffset, yOffset, zOffset);
-
-            addVertex(vb, m, mn, 0.0D, 0.0D, -1.0F, 0.0F, 1.0F, packedLight, xOffset, yOffset, zOffset);
-            addVertex(vb, m, mn, 32.0D*wScale, 0.0D, -1.0F, 1.0F, 1.0F, packedLight, xOffset, yOffset, zOffset);
-            addVertex(vb, m, mn, 32.0D*wScale, 0.0D, 1.0F, 1.0F, 1.0F-sideWidth, packedLight, xOffset, yOffset, zOffset);
-            addVertex(vb, m, mn, 0.0D, 0.0D, 1.0F, 0.0F, 1.0F-sideWidth, packedLight, xOffset, yOffset, zOffset);
+            double distanceSq = canvas.getDistanceSq(RenderEntityCanvas.this.renderManager.info.getProjectedView());
+            double detailDistance = Config.getCanvasDetailDistance();
+            double impostorDistance = Config.getCanvasImpostorDistance();
+
+            if(eye.getZ() < -1.0F){
+                if(distanceSq > impostorDistance*impostorDistance){
+                    drawImpostor(vb, m, mn, w, h, packedLight, xOffset, yOffset, zOffset);
+                }else{
+                    drawFront(vb, m, mn, w, h, packedLight, xOffset, yOffset, zOffset);
+                }
+            }
+            if(distanceSq <= detailDistance*detailDistance){
+                if(eye.getZ() > 1.0F){
+                    drawBack(vb, m, mn, back, w, h, packedLight, xOffset, yOffset, zOffset);
+                }
+                drawSides(vb, m, mn, back, w, h, eye.getX() < 0.0F, eye.getY() > h, eye.getX() > w, eye.getY() < 0.0F, packedLight, xOffset, yOffset, zOffset);
+            }
+            else if(eye.getZ() > 1.0F){
+                drawBack(vb, m, mn, back, w, h, packedLight, xOffset, yOffset, zOffset);
+            }
 
             ms.pop();
         }
 
-        private void addVertex(IVertexBuilder vb, Matrix4f m, Matrix3f mn, double x, double y, double z, float tx, float ty, int lightmap, float xOff, float yOff, float zOff)
+        private void drawFront(IVertexBuilder vb, Matrix4f m, Matrix3f mn, float w, float h, int packedLight, float xOffset, float yOffset, float zOffset) {
+            addVertex(vb, m, mn, 0.0F, h, -1.0F, slot, 1.0F, 0.0F, packedLight, xOffset, yOffset, zOffset);
+            addVertex(vb, m, mn, w, h, -1.0F, slot, 0.0F, 0.0F, packedLight, xOffset, yOffset, zOffset);
+            addVertex(vb, m, mn, w, 0.0F, -1.0F, slot, 0.0F, 1.0F, packedLight, xOffset, yOffset, zOffset);
+            addVertex(vb, m, mn, 0.0F, 0.0F, -1.0F, slot, 1.0F, 1.0F, packedLight, xOffset, yOffset, zOffset);
+        }
+
+        private void drawImpostor(IVertexBuilder vb, Matrix4f m, Matrix3f mn, float w, float h, int packedLight, float xOffset, float yOffset, float zOffset) {
+            CanvasAtlas.Slot white = slot.getPage().getWhiteSlot();
+            float u = white.u(0.5F);
+            float v = white.v(0.5F);
+            addVertex(vb, m, mn, 0.0F, h, -1.0F, u, v, averageRed, averageGreen, averageBlue, packedLight, xOffset, yOffset, zOffset);
+            addVertex(vb, m, mn, w, h, -1.0F, u, v, averageRed, averageGreen, averageBlue, packedLight, xOffset, yOffset, zOffset);
+            addVertex(vb, m, mn, w, 0.0F, -1.0F, u, v, averageRed, averageGreen, averageBlue, packedLight, xOffset, yOffset, zOffset);
+            addVertex(vb, m, mn, 0.0F, 0.0F, -1.0F, u, v, averageRed, averageGreen, averageBlue, packedLight, xOffset, yOffset, zOffset);
+        }
+
+        private void drawBack(IVertexBuilder vb, Matrix4f m, Matrix3f mn, CanvasAtlas.Slot back, float w, float h, int packedLight, float xOffset, float yOffset, float zOffset) {
+            addVertex(vb, m, mn, 0.0D, 0.0D, 1.0D, back, 0.0F, 0.0F, packedLight, xOffset, yOffset, zOffset);
+            addVertex(vb, m, mn, w, 0.0D, 1.0D, back, 1.0F, 0.0F, packedLight, xOffset, yOffset, zOffset);
+            addVertex(vb, m, mn, w, h, 1.0D, back, 1.0F, 1.0F, packedLight, xOffset, yOffset, zOffset);
+            addVertex(vb, m, mn, 0.0D, h, 1.0D, back, 0.0F, 1.0F, packedLight, xOffset, yOffset, zOffset);
+        }
+
+        private void drawSides(IVertexBuilder vb, Matrix4f m, Matrix3f mn, CanvasAtlas.Slot back, float w, float h, boolean left, boolean top, boolean right, boolean bottom, int packedLight, float xOffset, float yOffset, float zOffset) {
+            final float sideWidth = 1.0F/16.0F;
+            if(left){
+                addVertex(vb, m, mn, 0.0D, 0.0D, 1.0D, back, sideWidth, 0.0F, packedLight, xOffset, yOffset, zOffset);
+                addVertex(vb, m, mn, 0.0D, h, 1.0D, back, sideWidth, 1.0F, packedLight, xOffset, yOffset, zOffset);
+                addVertex(vb, m, mn, 0.0D, h, -1.0D, back, 0.0F, 1.0F, packedLight, xOffset, yOffset, zOffset);
+                addVertex(vb, m, mn, 0.0D, 0.0D, -1.0D, back, 0.0F, 0.0F, packedLight, xOffset, yOffset, zOffset);
+            }
+            if(top){
+                addVertex(vb, m, mn, 0.0D, h, 1.0F, back, 0.0F, 0.0F, packedLight, xOffset, yOffset, zOffset);
+                addVertex(vb, m, mn, w, h, 1.0F, back, 1.0F, 0.0F, packedLight, xOffset, yOffset, zOffset);
+                addVertex(vb, m, mn, w, h, -1.0F, back, 1.0F, sideWidth, packedLight, xOffset, yOffset, zOffset);
+                addVertex(vb, m, mn, 0.0D, h, -1.0F, back, 0.0F, sideWidth, packedLight, xOffset, yOffset, zOffset);
+            }
+            if(right){
+                addVertex(vb, m, mn, w, 0.0D, -1.0F, back, 0.0F, 0.0F, packedLight, xOffset, yOffset, zOffset);
+                addVertex(vb, m, mn, w, h, -1.0F, back, 0.0F, 1.0F, packedLight, xOffset, yOffset, zOffset);
+                addVertex(vb, m, mn, w, h, 1.0F, back, sideWidth, 1.0F, packedLight, xOffset, yOffset, zOffset);
+                addVertex(vb, m, mn, w, 0.0D, 1.0F, back, sideWidth, 0.0F, packedLight, xOffset, yOffset, zOffset);
+            }
+            if(bottom){
+                addVertex(vb, m, mn, 0.0D, 0.0D, -1.0F, back, 0.0F, 1.0F, packedLight, xOffset, yOffset, zOffset);
+                addVertex(vb, m, mn, w, 0.0D, -1.0F, back, 1.0F, 1.0F, packedLight, xOffset, yOffset, zOffset);
+                addVertex(vb, m, mn, w, 0.0D, 1.0F, back, 1.0F, 1.0F-sideWidth, packedLight, xOffset, yOffset, zOffset);
+                addVertex(vb, m, mn, 0.0D, 0.0D, 1.0F, back, 0.0F, 1.0F-sideWidth, packedLight, xOffset, yOffset, zOffset);
+            }
+        }
+
+        private void addVertex(IVertexBuilder vb, Matrix4f m, Matrix3f mn, double x, double y, double z, CanvasAtlas.Slot texSlot, float tx, float ty, int lightmap, float xOff, float yOff, float zOff)
         {
-            vb.pos(m, (float) x, (float)y, (float)z).color(255, 255, 255, 255).tex(tx, ty).overlay(OverlayTexture.NO_OVERLAY).lightmap(lightmap).normal(mn, xOff, yOff, zOff).endVertex();
+            addVertex(vb, m, mn, x, y, z, texSlot.u(tx), texSlot.v(ty), 255, 255, 255, lightmap, xOff, yOff, zOff);
         }
 
-        private void addVertexFront(IVertexBuilder vb, Matrix4f m, Matrix3f mn, double x, double y, double z, float tx, float ty, int lightmap, float xOff, float yOff, float zOff)
+        private void addVertex(IVertexBuilder vb, Matrix4f m, Matrix3f mn, double x, double y, double z, float u, float v, int r, int g, int b, int lightmap, float xOff, float yOff, float zOff)
         {
-            vb.pos(m, (float) x, (float)y, (float)z).color(255, 255, 255, 255).tex(tx, ty).lightmap(lightmap).endVertex();
+            vb.pos(m, (float) x, (float)y, (float)z).color(r, g, b, 255).tex(u, v).overlay(OverlayTexture.NO_OVERLAY).lightmap(lightmap).normal(mn, xOff, yOff, zOff).endVertex();
         }
 
         public void close() {
-            this.canvasTexture.close();
+            this.slot.free();
         }
     }
-}
\ No newline at end of file
+}
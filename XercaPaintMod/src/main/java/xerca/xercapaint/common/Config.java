@@ -0,0 +1,141 @@
+package xerca.xercapaint.common;
+
+import com.electronwill.nightconfig.core.file.CommentedFileConfig;
+import com.electronwill.nightconfig.core.io.WritingMode;
+import net.minecraftforge.common.ForgeConfigSpec;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import net.minecraftforge.fml.config.ModConfig;
+import xerca.xercapaint.common.entity.EntityCanvas;
+
+import java.nio.file.Path;
+
+@Mod.EventBusSubscriber(modid = XercaPaint.MODID, bus = Mod.EventBusSubscriber.Bus.MOD)
+public class Config {
+    public static final String CATEGORY_PERFORMANCE = "performance";
+    // Also the budget of the picture cache until the config is loaded
+    private static final int DEFAULT_PICTURE_CACHE_SIZE = 16384;
+
+    private static final ForgeConfigSpec.Builder COMMON_BUILD = new ForgeConfigSpec.Builder();
+    private static final ForgeConfigSpec.Builder CLIENT_BUILD = new ForgeConfigSpec.Builder();
+
+    public static ForgeConfigSpec COMMON_CONFIG;
+    public static ForgeConfigSpec CLIENT_CONFIG;
+
+    private static ForgeConfigSpec.IntValue PICTURE_CACHE_SIZE;
+    private static ForgeConfigSpec.IntValue PICTURE_STREAM_BUDGET;
+
+    private static ForgeConfigSpec.IntValue DISK_CACHE_SIZE;
+    private static ForgeConfigSpec.IntValue CANVAS_DETAIL_DISTANCE;
+    private static ForgeConfigSpec.IntValue CANVAS_IMPOSTOR_DISTANCE;
+    private static ForgeConfigSpec.IntValue CANVAS_RENDER_DISTANCE;
+    private static ForgeConfigSpec.IntValue UNDO_MEMORY;
+
+    private static int pictureCacheSize = DEFAULT_PICTURE_CACHE_SIZE;
+    private static int pictureStreamBudget;
+
+    private static int diskCacheSize;
+    private static int canvasDetailDistance;
+    private static int canvasImpostorDistance;
+    private static int canvasRenderDistance;
+    private static int undoMemory;
+
+    static {
+        COMMON_BUILD.comment("Performance settings").push(CATEGORY_PERFORMANCE);
+
+        PICTURE_CACHE_SIZE = COMMON_BUILD.comment("Memory budget of the in-memory picture cache, in kilobytes. Least recently used pictures are evicted above this size")
+                .defineInRange("picture_cache_size_kb", DEFAULT_PICTURE_CACHE_SIZE, 256, 1048576);
+        PICTURE_STREAM_BUDGET = COMMON_BUILD.comment("Bytes of picture data sent to each player per tick. Pictures are sent nearest first, at least one per tick")
+                .defineInRange("picture_stream_bytes_per_tick", 32768, 1024, 1048576);
+
+        COMMON_BUILD.pop();
+
+        COMMON_CONFIG = COMMON_BUILD.build();
+
+        CLIENT_BUILD.comment("Performance settings").push(CATEGORY_PERFORMANCE);
+
+        DISK_CACHE_SIZE = CLIENT_BUILD.comment("Size limit of the on-disk picture cache that saves downloading pictures again, in megabytes. 0 disables it")
+                .defineInRange("disk_cache_size_mb", 64, 0, 4096);
+        CANVAS_DETAIL_DISTANCE = CLIENT_BUILD.comment("Canvases closer than this many blocks are drawn with their back and sides")
+                .defineInRange("canvas_detail_distance", 16, 0, 256);
+        CANVAS_IMPOSTOR_DISTANCE = CLIENT_BUILD.comment("Canvases farther than this many blocks are drawn as a single quad of their average color")
+                .defineInRange("canvas_impostor_distance", 48, 0, 256);
+        CANVAS_RENDER_DISTANCE = CLIENT_BUILD.comment("Canvases farther than this many blocks are not drawn at all")
+                .defineInRange("canvas_render_distance", 96, 0, 256);
+        UNDO_MEMORY = CLIENT_BUILD.comment("Memory the undo history of the canvas editor may use, in kilobytes. Oldest strokes are forgotten above this size")
+                .defineInRange("undo_memory_kb", 256, 16, 65536);
+
+        CLIENT_BUILD.pop();
+
+        CLIENT_CONFIG = CLIENT_BUILD.build();
+    }
+
+    public static void loadConfig(ForgeConfigSpec spec, Path path) {
+        final CommentedFileConfig configData = CommentedFileConfig.builder(path)
+                .sync()
+                .autosave()
+                .writingMode(WritingMode.REPLACE)
+                .build();
+
+        configData.load();
+        spec.setConfig(configData);
+
+        bakeConfig(spec);
+    }
+
+    @SubscribeEvent
+    public static void onLoad(final ModConfig.Loading configEvent) {
+        XercaPaint.LOGGER.debug("Config load event");
+        Config.bakeConfig(configEvent.getConfig().getSpec());
+    }
+
+    @SubscribeEvent
+    public static void onReload(final ModConfig.Reloading configEvent) {
+        XercaPaint.LOGGER.debug("Config reload event");
+        Config.bakeConfig(configEvent.getConfig().getSpec());
+    }
+
+    public static void bakeConfig(ForgeConfigSpec spec){
+        if(spec == COMMON_CONFIG){
+            pictureCacheSize = PICTURE_CACHE_SIZE.get();
+            pictureStreamBudget = PICTURE_STREAM_BUDGET.get();
+
+            EntityCanvas.PICTURES.setBudget(getPictureCacheBytes());
+        }
+        else if(spec == CLIENT_CONFIG){
+            diskCacheSize = DISK_CACHE_SIZE.get();
+            canvasDetailDistance = CANVAS_DETAIL_DISTANCE.get();
+            canvasImpostorDistance = CANVAS_IMPOSTOR_DISTANCE.get();
+            canvasRenderDistance = CANVAS_RENDER_DISTANCE.get();
+            undoMemory = UNDO_MEMORY.get();
+        }
+    }
+
+    public static long getPictureCacheBytes() {
+        return pictureCacheSize * 1024L;
+    }
+
+    public static int getPictureStreamBudget() {
+        return pictureStreamBudget;
+    }
+
+    public static long getDiskCacheBytes() {
+        return diskCacheSize * 1024L * 1024L;
+    }
+
+    public static int getCanvasDetailDistance() {
+        return canvasDetailDistance;
+    }
+
+    public static int getCanvasImpostorDistance() {
+        return canvasImpostorDistance;
+    }
+
+    public static int getCanvasRenderDistance() {
+        return canvasRenderDistance;
+    }
+
+    public static long getUndoMemoryBytes() {
+        return undoMemory * 1024L;
+    }
+}
@@ -1,8 +1,42 @@
 package xerca.xercapaint.common;
 
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.server.MinecraftServer;
+import net.minecraftforge.event.entity.item.ItemExpireEvent;
+import net.minecraftforge.event.entity.player.PlayerEvent;
+import net.minecraftforge.eventbus.api.EventPriority;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
 import net.minecraftforge.fml.common.Mod;
+import xerca.xercapaint.common.item.ItemCanvas;
+
+import javax.annotation.Nullable;
 
 @Mod.EventBusSubscriber(modid = XercaPaint.MODID)
 class EventHandler {
+    // A cloned canvas holds the picture of the original too
+    @SubscribeEvent
+    public static void onItemCrafted(PlayerEvent.ItemCraftedEvent event) {
+        String name = getCanvasName(event.getCrafting());
+        MinecraftServer server = event.getPlayer().getServer();
+        if(name != null && server != null && !event.getPlayer().world.isRemote){
+            PictureStore.get(server).retain(name);
+        }
+    }
+
+    // A despawned canvas item is gone for good, unless another handler gave it more time
+    @SubscribeEvent(priority = EventPriority.LOWEST)
+    public static void onItemExpire(ItemExpireEvent event) {
+        String name = getCanvasName(event.getEntityItem().getItem());
+        MinecraftServer server = event.getEntityItem().world.getServer();
+        if(name != null && server != null && !event.getEntityItem().world.isRemote){
+            PictureStore.get(server).release(name);
+        }
+    }
 
+    @Nullable
+    private static String getCanvasName(ItemStack stack) {
+        CompoundNBT tag = stack.getTag();
+        return stack.getItem() instanceof ItemCanvas && tag != null && tag.contains("name") ? tag.getString("name") : null;
+    }
 }
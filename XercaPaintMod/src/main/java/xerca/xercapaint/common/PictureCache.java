@@ -0,0 +1,172 @@
+package xerca.xercapaint.common;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import xerca.xercapaint.common.entity.EntityCanvas.Picture;
+
+import javax.annotation.Nullable;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Size bounded, least recently used store of canvas pictures.
+ *
+ * Pictures that are pushed out of the budget are only weakly remembered afterwards. As long as something else still
+ * holds them (a loaded canvas entity, an open gui) a lookup brings them back without any copying, otherwise they are
+ * left to the garbage collector and have to be loaded again from the entity, item or server that owns them.
+ *
+ * Pictures that were drawn in the current or the last frame are never evicted, so canvases on screen are not closed and
+ * built again every frame when the budget is too small for all of them. The budget is exceeded instead until they go
+ * out of view.
+ *
+ * The same instance is shared by the client and the integrated server, so every method is synchronized.
+ */
+public class PictureCache {
+    private static final int ENTRY_OVERHEAD = 64;
+
+    private final LinkedHashMap<String, Picture> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final Map<String, PictureRef> evicted = Maps.newHashMap();
+    private final ReferenceQueue<Picture> queue = new ReferenceQueue<>();
+    private final List<Consumer<String>> evictionListeners = Lists.newArrayList();
+    private Set<String> drawn = Sets.newHashSet();
+    private Set<String> drawnBefore = Sets.newHashSet();
+    private long budget;
+    private long size = 0;
+
+    public PictureCache(long budget) {
+        this.budget = budget;
+    }
+
+    @Nullable
+    public synchronized Picture get(String name) {
+        Picture picture = entries.get(name);
+        if(picture == null){
+            expungeStale();
+            PictureRef ref = evicted.remove(name);
+            if(ref != null){
+                picture = ref.get();
+                if(picture != null){
+                    insert(name, picture);
+                }
+            }
+        }
+        return picture;
+    }
+
+    public synchronized void put(String name, Picture picture) {
+        evicted.remove(name);
+        insert(name, picture);
+    }
+
+    /**
+     * Stores the supplied pixels unless a picture of the same or a newer version is already known.
+     * The supplier is only called when the pixels are actually needed.
+     * @return the picture that is current after the call
+     */
+    public synchronized Picture putIfNewer(String name, int version, Supplier<int[]> pixels) {
+        Picture picture = get(name);
+        if(picture == null || picture.version < version){
+            picture = new Picture(version, pixels.get());
+            put(name, picture);
+        }
+        return picture;
+    }
+
+    public synchronized void remove(String name) {
+        evicted.remove(name);
+        Picture old = entries.remove(name);
+        if(old != null){
+            size -= sizeOf(old);
+        }
+    }
+
+    public synchronized void setBudget(long budget) {
+        this.budget = budget;
+        trim();
+    }
+
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * Starts a new frame, forgetting the pictures drawn two frames ago
+     */
+    public synchronized void beginFrame() {
+        Set<String> last = drawnBefore;
+        drawnBefore = drawn;
+        drawn = last;
+        drawn.clear();
+    }
+
+    /**
+     * Keeps the picture in the budget for this frame and the next one
+     */
+    public synchronized void markDrawn(String name) {
+        drawn.add(name);
+    }
+
+    /**
+     * Listeners are told the name of each picture that leaves the budget. They may be called from any thread.
+     */
+    public synchronized void addEvictionListener(Consumer<String> listener) {
+        evictionListeners.add(listener);
+    }
+
+    private void insert(String name, Picture picture) {
+        Picture old = entries.put(name, picture);
+        if(old != null){
+            size -= sizeOf(old);
+        }
+        size += sizeOf(picture);
+        trim();
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<String, Picture>> it = entries.entrySet().iterator();
+        while(size > budget && entries.size() > 1 && it.hasNext()){
+            Map.Entry<String, Picture> eldest = it.next();
+            if(drawn.contains(eldest.getKey()) || drawnBefore.contains(eldest.getKey())){
+                continue;
+            }
+            it.remove();
+            size -= sizeOf(eldest.getValue());
+            evicted.put(eldest.getKey(), new PictureRef(eldest.getKey(), eldest.getValue(), queue));
+            for(Consumer<String> listener : evictionListeners){
+                listener.accept(eldest.getKey());
+            }
+        }
+    }
+
+    private void expungeStale() {
+        Reference<? extends Picture> ref;
+        while((ref = queue.poll()) != null){
+            PictureRef pictureRef = (PictureRef) ref;
+            if(evicted.get(pictureRef.name) == pictureRef){
+                evicted.remove(pictureRef.name);
+            }
+        }
+    }
+
+    private static long sizeOf(Picture picture) {
+        return ENTRY_OVERHEAD + (picture.pixels == null ? 0 : picture.pixels.length * 4L);
+    }
+
+    private static class PictureRef extends WeakReference<Picture> {
+        private final String name;
+
+        private PictureRef(String name, Picture picture, ReferenceQueue<Picture> queue) {
+            super(picture, queue);
+            this.name = name;
+        }
+    }
+}
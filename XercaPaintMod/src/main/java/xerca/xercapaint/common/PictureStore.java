@@ -0,0 +1,232 @@
+package xerca.xercapaint.common;
+
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.nbt.ListNBT;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.world.World;
+import net.minecraft.world.server.ServerWorld;
+import net.minecraft.world.storage.WorldSavedData;
+import net.minecraftforge.common.util.Constants;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+
+/**
+ * World wide store of canvas pixels, so that canvas items and entities only have to carry a name and a version.
+ *
+ * Pixels are kept once per distinct content, keyed by the hash of their encoded form, and every canvas name points to
+ * the content of its latest version. A blob counts the names pointing to it and is dropped when the last one moves on
+ * to other content, so editing an unsigned canvas doesn't leave its old versions behind.
+ *
+ * A name counts the canvas items and entities holding it. A new painting has one, a copy from the crafting table adds
+ * one, and a canvas that is certainly gone takes one away: an item that despawned, or a placed canvas broken without
+ * dropping its item. The name and its blob reference are dropped when no holder is left. Canvases lost any other way
+ * are not counted, which only keeps their pixels around for longer. Names whose holders can't be counted, like the
+ * ones moved in from older versions or seen in a creative inventory, are never dropped.
+ *
+ * The whole store is kept in memory while the world is loaded.
+ */
+public class PictureStore extends WorldSavedData {
+    private static final String NAME = XercaPaint.MODID + "_pictures";
+    private static final int UNCOUNTED = -1;
+
+    private final Map<String, Blob> blobs = Maps.newHashMap();
+    private final Map<String, Entry> entries = Maps.newHashMap();
+
+    public PictureStore() {
+        super(NAME);
+    }
+
+    public static PictureStore get(MinecraftServer server) {
+        ServerWorld overworld = server.getWorld(World.OVERWORLD);
+        return overworld.getSavedData().getOrCreate(PictureStore::new, NAME);
+    }
+
+    @Nullable
+    public Entry get(String name) {
+        return entries.get(name);
+    }
+
+    @Nullable
+    public int[] getPixels(String name) {
+        Entry entry = entries.get(name);
+        if(entry == null){
+            return null;
+        }
+        try {
+            return PixelCodec.decode(entry.blob.data, PixelCodec.MAX_PIXELS);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            XercaPaint.LOGGER.error("Invalid stored picture " + name + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Stores the pixels of a canvas unless a newer version of it is already stored.
+     */
+    public void put(String name, int version, int[] pixels) {
+        Entry old = entries.get(name);
+        if(old != null && old.version > version){
+            return;
+        }
+        byte[] data = PixelCodec.encode(pixels);
+        String hash = Hashing.sha256().hashBytes(data).toString();
+        if(old != null && old.blob.hash.equals(hash)){
+            old.version = version;
+            markDirty();
+            return;
+        }
+
+        Blob blob = blobs.computeIfAbsent(hash, h -> new Blob(h, data));
+        blob.refs++;
+        entries.put(name, new Entry(version, blob, old != null ? old.holders : 1));
+        if(old != null){
+            release(old.blob);
+        }
+        markDirty();
+    }
+
+    /**
+     * Moves the pixels that older versions kept in canvas tags into the store and strips them from the tag.
+     */
+    public void migrate(CompoundNBT tag) {
+        if(PixelCodec.hasPixels(tag) && tag.contains("name")){
+            String name = tag.getString("name");
+            put(name, tag.getInt("v"), PixelCodec.readPixels(tag));
+            PixelCodec.removePixels(tag);
+            // Older versions may have left any number of copies around
+            pin(name);
+        }
+    }
+
+    /**
+     * Counts one more canvas holding the name
+     */
+    public void retain(String name) {
+        Entry entry = entries.get(name);
+        if(entry != null && entry.holders != UNCOUNTED){
+            entry.holders++;
+            markDirty();
+        }
+    }
+
+    /**
+     * Counts one less canvas holding the name, and drops the name once none is left
+     */
+    public void release(String name) {
+        Entry entry = entries.get(name);
+        if(entry != null && entry.holders > 0){
+            entry.holders--;
+            if(entry.holders == 0){
+                entries.remove(name);
+                release(entry.blob);
+            }
+            markDirty();
+        }
+    }
+
+    /**
+     * Keeps the name for good, for canvases that may have been copied without being counted
+     */
+    public void pin(String name) {
+        Entry entry = entries.get(name);
+        if(entry != null && entry.holders != UNCOUNTED){
+            entry.holders = UNCOUNTED;
+            markDirty();
+        }
+    }
+
+    private void release(Blob blob) {
+        blob.refs--;
+        if(blob.refs <= 0){
+            blobs.remove(blob.hash);
+        }
+    }
+
+    @Override
+    public void read(CompoundNBT nbt) {
+        blobs.clear();
+        entries.clear();
+        ListNBT blobList = nbt.getList("blobs", Constants.NBT.TAG_COMPOUND);
+        for(int i = 0; i < blobList.size(); i++){
+            CompoundNBT blobTag = blobList.getCompound(i);
+            String hash = blobTag.getString("hash");
+            blobs.put(hash, new Blob(hash, blobTag.getByteArray("data")));
+        }
+
+        // Blob reference counts are not saved, they are rebuilt from the entries that are still around
+        ListNBT entryList = nbt.getList("pictures", Constants.NBT.TAG_COMPOUND);
+        for(int i = 0; i < entryList.size(); i++){
+            CompoundNBT entryTag = entryList.getCompound(i);
+            Blob blob = blobs.get(entryTag.getString("hash"));
+            if(blob != null){
+                blob.refs++;
+                // Older saves didn't count holders
+                int holders = entryTag.contains("holders") ? entryTag.getInt("holders") : UNCOUNTED;
+                entries.put(entryTag.getString("name"), new Entry(entryTag.getInt("v"), blob, holders));
+            }
+        }
+        blobs.values().removeIf(blob -> blob.refs == 0);
+    }
+
+    @Override
+    public CompoundNBT write(CompoundNBT compound) {
+        ListNBT blobList = new ListNBT();
+        for(Blob blob : blobs.values()){
+            CompoundNBT blobTag = new CompoundNBT();
+            blobTag.putString("hash", blob.hash);
+            blobTag.putByteArray("data", blob.data);
+            blobList.add(blobTag);
+        }
+        compound.put("blobs", blobList);
+
+        ListNBT entryList = new ListNBT();
+        for(Map.Entry<String, Entry> entry : entries.entrySet()){
+            CompoundNBT entryTag = new CompoundNBT();
+            entryTag.putString("name", entry.getKey());
+            entryTag.putInt("v", entry.getValue().version);
+            entryTag.putString("hash", entry.getValue().blob.hash);
+            entryTag.putInt("holders", entry.getValue().holders);
+            entryList.add(entryTag);
+        }
+        compound.put("pictures", entryList);
+        return compound;
+    }
+
+    public static class Entry {
+        private int version;
+        private final Blob blob;
+        // Canvas items and entities holding the name, or UNCOUNTED
+        private int holders;
+
+        private Entry(int version, Blob blob, int holders) {
+            this.version = version;
+            this.blob = blob;
+            this.holders = holders;
+        }
+
+        public int getVersion() {
+            return version;
+        }
+
+        /**
+         * The pixels in {@link PixelCodec} format
+         */
+        public byte[] getData() {
+            return blob.data;
+        }
+    }
+
+    private static class Blob {
+        private final String hash;
+        private final byte[] data;
+        private int refs = 0;
+
+        private Blob(String hash, byte[] data) {
+            this.hash = hash;
+            this.data = data;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package xerca.xercapaint.common;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.util.math.BlockPos;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.entity.player.PlayerEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import net.minecraftforge.fml.network.PacketDistributor;
+import net.minecraftforge.fml.server.ServerLifecycleHooks;
+import xerca.xercapaint.common.packets.PictureSendPacket;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Sends requested pictures to each player nearest first, within a per tick byte budget.
+ *
+ * Each player can only have so many pictures waiting. Requests past that, and requests for pictures the server doesn't
+ * have, are answered as not found so the client asks again later instead of waiting forever.
+ */
+@Mod.EventBusSubscriber(modid = XercaPaint.MODID)
+public class PictureStreamer {
+    private static final int MAX_QUEUED = 1024;
+    private static final Map<UUID, Map<String, BlockPos>> queues = Maps.newHashMap();
+
+    public static void enqueue(ServerPlayerEntity player, List<String> names, List<BlockPos> positions) {
+        Map<String, BlockPos> queue = queues.computeIfAbsent(player.getUniqueID(), k -> Maps.newHashMap());
+        for(int i = 0; i < names.size(); i++){
+            if(queue.size() < MAX_QUEUED || queue.containsKey(names.get(i))){
+                queue.put(names.get(i), positions.get(i));
+            }
+            else{
+                XercaPaint.NETWORK_HANDLER.send(PacketDistributor.PLAYER.with(() -> player), PictureSendPacket.notFound(names.get(i)));
+            }
+        }
+    }
+
+    @SubscribeEvent
+    public static void onServerTick(TickEvent.ServerTickEvent event) {
+        if(event.phase != TickEvent.Phase.END || queues.isEmpty()){
+            return;
+        }
+        MinecraftServer server = ServerLifecycleHooks.getCurrentServer();
+        if(server == null){
+            queues.clear();
+            return;
+        }
+
+        Iterator<Map.Entry<UUID, Map<String, BlockPos>>> it = queues.entrySet().iterator();
+        while(it.hasNext()){
+            Map.Entry<UUID, Map<String, BlockPos>> entry = it.next();
+            ServerPlayerEntity player = server.getPlayerList().getPlayerByUUID(entry.getKey());
+            if(player == null){
+                it.remove();
+                continue;
+            }
+            sendNearest(player, entry.getValue());
+            if(entry.getValue().isEmpty()){
+                it.remove();
+            }
+        }
+    }
+
+    private static void sendNearest(ServerPlayerEntity player, Map<String, BlockPos> queue) {
+        List<Map.Entry<String, BlockPos>> entries = Lists.newArrayList(queue.entrySet());
+        entries.sort(Comparator.comparingDouble(e -> e.getValue().distanceSq(player.getPosX(), player.getPosY(), player.getPosZ(), true)));
+
+        PictureStore store = PictureStore.get(player.server);
+        int budget = Config.getPictureStreamBudget();
+        int sent = 0;
+        for(Map.Entry<String, BlockPos> entry : entries){
+            if(sent > 0 && sent >= budget){
+                break;
+            }
+            String name = entry.getKey();
+            queue.remove(name);
+            PictureStore.Entry picture = store.get(name);
+            if(picture != null){
+                PictureSendPacket pack = new PictureSendPacket(name, picture.getVersion(), picture.getData());
+                XercaPaint.NETWORK_HANDLER.send(PacketDistributor.PLAYER.with(() -> player), pack);
+                sent += pack.getSize();
+            }
+            else{
+                XercaPaint.NETWORK_HANDLER.send(PacketDistributor.PLAYER.with(() -> player), PictureSendPacket.notFound(name));
+            }
+        }
+    }
+
+    @SubscribeEvent
+    public static void onPlayerLogout(PlayerEvent.PlayerLoggedOutEvent event) {
+        queues.remove(event.getPlayer().getUniqueID());
+    }
+}
@@ -0,0 +1,291 @@
+package xerca.xercapaint.common;
+
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.network.PacketBuffer;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * Compact, versioned encoding of canvas pixels.
+ *
+ * A canvas only ever uses a handful of colors, so pixels are stored as a color table followed by either bit packed
+ * color indices or runs of indices, whichever is smaller. Canvases with more than 256 colors fall back to raw ARGB.
+ *
+ * Layout: format version (byte), mode (byte), pixel count (varint), then for the palette modes the color count
+ * (varint), the colors (4 bytes each) and the packed indices or the (run length varint, index byte) pairs.
+ */
+public class PixelCodec {
+    public static final String TAG_PIXELS = "cpixels";
+    public static final String TAG_LEGACY_PIXELS = "pixels";
+    // Pixels of the largest canvas
+    public static final int MAX_PIXELS = 32 * 32;
+
+    private static final byte FORMAT_VERSION = 1;
+    private static final byte MODE_RAW = 0;
+    private static final byte MODE_PACKED = 1;
+    private static final byte MODE_RLE = 2;
+    private static final int MAX_PALETTE_SIZE = 256;
+
+    public static byte[] encode(int[] pixels) {
+        int[] palette = new int[MAX_PALETTE_SIZE];
+        int paletteSize = 0;
+        int[] indices = new int[pixels.length];
+        for(int i = 0; i < pixels.length; i++){
+            int index = -1;
+            for(int j = 0; j < paletteSize; j++){
+                if(palette[j] == pixels[i]){
+                    index = j;
+                    break;
+                }
+            }
+            if(index < 0){
+                if(paletteSize == MAX_PALETTE_SIZE){
+                    return encodeRaw(pixels);
+                }
+                index = paletteSize++;
+                palette[index] = pixels[i];
+            }
+            indices[i] = index;
+        }
+
+        int bits = bitsFor(paletteSize);
+        int packedLength = (pixels.length * bits + 7) / 8;
+        boolean useRle = rleLength(indices) < packedLength;
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 + paletteSize * 4 + packedLength);
+        out.write(FORMAT_VERSION);
+        out.write(useRle ? MODE_RLE : MODE_PACKED);
+        writeVarInt(out, pixels.length);
+        writeVarInt(out, paletteSize);
+        for(int i = 0; i < paletteSize; i++){
+            writeInt(out, palette[i]);
+        }
+
+        if(useRle){
+            int start = 0;
+            for(int i = 1; i <= indices.length; i++){
+                if(i == indices.length || indices[i] != indices[start]){
+                    writeVarInt(out, i - start);
+                    out.write(indices[start]);
+                    start = i;
+                }
+            }
+        }
+        else{
+            long acc = 0;
+            int accBits = 0;
+            for(int index : indices){
+                acc |= ((long) index) << accBits;
+                accBits += bits;
+                while(accBits >= 8){
+                    out.write((int) (acc & 0xFF));
+                    acc >>>= 8;
+                    accBits -= 8;
+                }
+            }
+            if(accBits > 0){
+                out.write((int) (acc & 0xFF));
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] encodeRaw(int[] pixels) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(8 + pixels.length * 4);
+        out.write(FORMAT_VERSION);
+        out.write(MODE_RAW);
+        writeVarInt(out, pixels.length);
+        for(int pixel : pixels){
+            writeInt(out, pixel);
+        }
+        return out.toByteArray();
+    }
+
+    private static int rleLength(int[] indices) {
+        int length = 0;
+        int start = 0;
+        for(int i = 1; i <= indices.length; i++){
+            if(i == indices.length || indices[i] != indices[start]){
+                length += varIntSize(i - start) + 1;
+                start = i;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the data is malformed or holds more than maxPixels pixels
+     */
+    public static int[] decode(byte[] data, int maxPixels) {
+        Reader in = new Reader(data);
+        byte version = in.readByte();
+        if(version != FORMAT_VERSION){
+            throw new IllegalArgumentException("Unknown pixel format version " + version);
+        }
+        byte mode = in.readByte();
+        int count = in.readVarInt();
+        if(count < 0 || count > maxPixels){
+            throw new IllegalArgumentException("Pixel count " + count + " is out of range");
+        }
+        int[] pixels = new int[count];
+
+        if(mode == MODE_RAW){
+            for(int i = 0; i < count; i++){
+                pixels[i] = in.readInt();
+            }
+            return pixels;
+        }
+
+        int paletteSize = in.readVarInt();
+        if(paletteSize > MAX_PALETTE_SIZE || (paletteSize < 1 && count > 0)){
+            throw new IllegalArgumentException("Palette size " + paletteSize + " is out of range");
+        }
+        int[] palette = new int[paletteSize];
+        for(int i = 0; i < paletteSize; i++){
+            palette[i] = in.readInt();
+        }
+
+        if(mode == MODE_RLE){
+            int i = 0;
+            while(i < count){
+                int length = in.readVarInt();
+                int index = in.readByte() & 0xFF;
+                if(length <= 0 || i + length > count || index >= paletteSize){
+                    throw new IllegalArgumentException("Invalid pixel run");
+                }
+                Arrays.fill(pixels, i, i + length, palette[index]);
+                i += length;
+            }
+        }
+        else if(mode == MODE_PACKED){
+            int bits = bitsFor(paletteSize);
+            int mask = (1 << bits) - 1;
+            long acc = 0;
+            int accBits = 0;
+            for(int i = 0; i < count; i++){
+                while(accBits < bits){
+                    acc |= ((long) (in.readByte() & 0xFF)) << accBits;
+                    accBits += 8;
+                }
+                int index = (int) (acc & mask);
+                acc >>>= bits;
+                accBits -= bits;
+                if(index >= paletteSize){
+                    throw new IllegalArgumentException("Invalid palette index " + index);
+                }
+                pixels[i] = palette[index];
+            }
+        }
+        else{
+            throw new IllegalArgumentException("Unknown pixel encoding mode " + mode);
+        }
+        return pixels;
+    }
+
+    public static boolean hasPixels(CompoundNBT tag) {
+        return tag.contains(TAG_PIXELS) || tag.contains(TAG_LEGACY_PIXELS);
+    }
+
+    /**
+     * Reads pixels in the compact format, or from the raw int array that older versions wrote.
+     */
+    public static int[] readPixels(CompoundNBT tag) {
+        if(tag.contains(TAG_PIXELS)){
+            try {
+                return decode(tag.getByteArray(TAG_PIXELS), MAX_PIXELS);
+            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                XercaPaint.LOGGER.error("Invalid canvas pixel data: " + e.getMessage());
+                return new int[0];
+            }
+        }
+        return tag.getIntArray(TAG_LEGACY_PIXELS);
+    }
+
+    /**
+     * Removes pixels of either format from a tag, once they are kept in the {@link PictureStore}.
+     */
+    public static void removePixels(CompoundNBT tag) {
+        tag.remove(TAG_PIXELS);
+        tag.remove(TAG_LEGACY_PIXELS);
+    }
+
+    public static void writePixels(PacketBuffer buf, int[] pixels) {
+        buf.writeByteArray(encode(pixels));
+    }
+
+    public static int[] readPixels(PacketBuffer buf, int maxPixels) {
+        return decode(buf.readByteArray(maxEncodedLength(maxPixels)), maxPixels);
+    }
+
+    private static int maxEncodedLength(int maxPixels) {
+        return 16 + maxPixels * 4;
+    }
+
+    private static int bitsFor(int paletteSize) {
+        int bits = 1;
+        while((1 << bits) < paletteSize){
+            bits++;
+        }
+        return bits;
+    }
+
+    private static int varIntSize(int value) {
+        int size = 1;
+        while((value & -128) != 0){
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while((value & -128) != 0){
+            out.write(value & 127 | 128);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    private static class Reader {
+        private final byte[] data;
+        private int pos = 0;
+
+        private Reader(byte[] data) {
+            this.data = data;
+        }
+
+        private byte readByte() {
+            if(pos >= data.length){
+                throw new IllegalArgumentException("Unexpected end of pixel data");
+            }
+            return data[pos++];
+        }
+
+        private int readInt() {
+            return (readByte() & 0xFF) << 24 | (readByte() & 0xFF) << 16 | (readByte() & 0xFF) << 8 | (readByte() & 0xFF);
+        }
+
+        private int readVarInt() {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                if(shift >= 35){
+                    throw new IllegalArgumentException("VarInt too big");
+                }
+                b = readByte();
+                value |= (b & 127) << shift;
+                shift += 7;
+            } while((b & 128) != 0);
+            return value;
+        }
+    }
+}
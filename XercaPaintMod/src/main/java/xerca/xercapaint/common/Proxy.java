@@ -2,8 +2,15 @@ package xerca.xercapaint.common;
 
 import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.util.math.BlockPos;
+import xerca.xercapaint.common.entity.EntityCanvas;
+
+import javax.annotation.Nullable;
 
 public abstract class Proxy {
     public abstract void init();
     public abstract void showCanvasGui(PlayerEntity player);
+    public abstract void requestPicture(String name, BlockPos pos);
+    @Nullable
+    public abstract EntityCanvas.Picture getOrRequestPicture(String name, int version, BlockPos pos);
 }
@@ -3,11 +3,14 @@ package xerca.xercapaint.common;
 import net.minecraft.util.ResourceLocation;
 import net.minecraftforge.common.MinecraftForge;
 import net.minecraftforge.fml.DistExecutor;
+import net.minecraftforge.fml.ModLoadingContext;
 import net.minecraftforge.fml.common.Mod;
+import net.minecraftforge.fml.config.ModConfig;
 import net.minecraftforge.fml.event.lifecycle.FMLCommonSetupEvent;
 import net.minecraftforge.fml.event.lifecycle.InterModEnqueueEvent;
 import net.minecraftforge.fml.event.lifecycle.InterModProcessEvent;
 import net.minecraftforge.fml.javafmlmod.FMLJavaModLoadingContext;
+import net.minecraftforge.fml.loading.FMLPaths;
 import net.minecraftforge.fml.network.NetworkRegistry;
 import net.minecraftforge.fml.network.simple.SimpleChannel;
 import org.apache.logging.log4j.LogManager;
@@ -23,7 +26,7 @@ public class XercaPaint {
 
     public static Proxy proxy = DistExecutor.runForDist(() -> ClientProxy::new, () -> ServerProxy::new);
 
-    private static final String PROTOCOL_VERSION = Integer.toString(1);
+    private static final String PROTOCOL_VERSION = Integer.toString(4);
     public static final SimpleChannel NETWORK_HANDLER = NetworkRegistry.ChannelBuilder
             .named(new ResourceLocation(XercaPaint.MODID, "main_channel"))
             .clientAcceptedVersions(PROTOCOL_VERSION::equals)
@@ -39,6 +42,12 @@ public class XercaPaint {
         FMLJavaModLoadingContext.get().getModEventBus().addListener(this::processIMC);
 
         MinecraftForge.EVENT_BUS.register(this);
+
+        ModLoadingContext.get().registerConfig(ModConfig.Type.COMMON, Config.COMMON_CONFIG);
+        ModLoadingContext.get().registerConfig(ModConfig.Type.CLIENT, Config.CLIENT_CONFIG);
+
+        Config.loadConfig(Config.COMMON_CONFIG, FMLPaths.CONFIGDIR.get().resolve("xercapaint-common.toml"));
+        Config.loadConfig(Config.CLIENT_CONFIG, FMLPaths.CONFIGDIR.get().resolve("xercapaint-client.toml"));
     }
 
     private void networkRegistry(){
@@ -47,6 +56,7 @@ public class XercaPaint {
         NETWORK_HANDLER.registerMessage(msg_id++, PaletteUpdatePacket.class, PaletteUpdatePacket::encode, PaletteUpdatePacket::decode, PaletteUpdatePacketHandler::handle);
         NETWORK_HANDLER.registerMessage(msg_id++, PictureRequestPacket.class, PictureRequestPacket::encode, PictureRequestPacket::decode, PictureRequestPacketHandler::handle);
         NETWORK_HANDLER.registerMessage(msg_id++, PictureSendPacket.class, PictureSendPacket::encode, PictureSendPacket::decode, PictureSendPacketHandler::handle);
+        NETWORK_HANDLER.registerMessage(msg_id++, CanvasDeltaPacket.class, CanvasDeltaPacket::encode, CanvasDeltaPacket::decode, CanvasDeltaPacketHandler::handle);
     }
 
     private void setup(final FMLCommonSetupEvent event)
@@ -1,6 +1,5 @@
 package xerca.xercapaint.common.entity;
 
-import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import net.minecraft.block.BlockState;
 import net.minecraft.block.RedstoneDiodeBlock;
@@ -17,6 +16,7 @@ import net.minecraft.network.PacketBuffer;
 import net.minecraft.network.datasync.DataParameter;
 import net.minecraft.network.datasync.DataSerializers;
 import net.minecraft.network.datasync.EntityDataManager;
+import net.minecraft.server.MinecraftServer;
 import net.minecraft.util.ActionResultType;
 import net.minecraft.util.Direction;
 import net.minecraft.util.Hand;
@@ -30,12 +30,13 @@ import net.minecraftforge.fml.network.FMLPlayMessages;
 import net.minecraftforge.fml.network.NetworkHooks;
 import org.apache.commons.lang3.Validate;
 import xerca.xercapaint.common.CanvasType;
+import xerca.xercapaint.common.Config;
+import xerca.xercapaint.common.PictureCache;
+import xerca.xercapaint.common.PictureStore;
 import xerca.xercapaint.common.XercaPaint;
 import xerca.xercapaint.common.item.Items;
-import xerca.xercapaint.common.packets.PictureRequestPacket;
 
 import javax.annotation.Nullable;
-import java.util.Map;
 import java.util.Set;
 
 
@@ -48,8 +49,10 @@ public class EntityCanvas extends HangingEntity implements IEntityAdditionalSpaw
     private boolean canvasSigned;
     private int tickCounter1 = 0;
     private CanvasType canvasType;
+    // Keeps this canvas' picture reachable while the entity is loaded, even after the cache evicts it
+    private Picture picture;
     private static final DataParameter<Integer> ROTATION = EntityDataManager.createKey(EntityCanvas.class, DataSerializers.VARINT);
-    public static final Map<String, Picture> PICTURES = Maps.newHashMap();
+    public static final PictureCache PICTURES = new PictureCache(Config.getPictureCacheBytes());
     public static final Set<String> PICTURE_REQUESTS = Sets.newHashSet();
 
     public EntityCanvas(World world, CompoundNBT canvasNBT, BlockPos pos, Direction facing, CanvasType canvasType, int rotation) {
@@ -69,10 +72,7 @@ public class EntityCanvas extends HangingEntity implements IEntityAdditionalSpaw
 
         this.updateFacingWithBoundingBox(facing);
 
-        Picture picture = PICTURES.get(canvasName);
-        if(picture == null || picture.version < canvasVersion){
-            PICTURES.put(canvasName, new Picture(canvasVersion, canvasNBT.getIntArray("pixels")));
-        }
+        migratePixels(canvasNBT);
     }
 
     public EntityCanvas(EntityType<EntityCanvas> entityCanvasEntityType, World world) {
@@ -114,6 +114,17 @@ public class EntityCanvas extends HangingEntity implements IEntityAdditionalSpaw
         return canvasVersion;
     }
 
+    @Nullable
+    public Picture getPicture() {
+        if(picture == null || picture.version < canvasVersion){
+            Picture cached = PICTURES.get(canvasName);
+            if(cached != null && (picture == null || cached.version > picture.version)){
+                picture = cached;
+            }
+        }
+        return picture;
+    }
+
     @Override
     public void onBroken(@Nullable Entity brokenEntity) {
         if (this.world.getGameRules().getBoolean(GameRules.DO_ENTITY_DROPS)) {
@@ -121,6 +132,7 @@ public class EntityCanvas extends HangingEntity implements IEntityAdditionalSpaw
             if (brokenEntity instanceof PlayerEntity) {
                 PlayerEntity playerentity = (PlayerEntity)brokenEntity;
                 if (playerentity.abilities.isCreativeMode) {
+                    releasePicture();
                     return;
                 }
             }
@@ -149,14 +161,20 @@ public class EntityCanvas extends HangingEntity implements IEntityAdditionalSpaw
                 nbt.putString("title", canvasTitle);
                 nbt.putInt("generation", canvasGeneration);
             }
-            Picture picture = PICTURES.get(canvasName);
-            if(picture != null){
-                nbt.putIntArray("pixels", picture.pixels);
-            }
-
             canvasItem.setTag(nbt);
             this.entityDropItem(canvasItem);
         }
+        else {
+            releasePicture();
+        }
+    }
+
+    // A canvas broken without dropping its item no longer holds its picture
+    private void releasePicture() {
+        MinecraftServer server = world.getServer();
+        if(!world.isRemote && server != null && canvasName != null){
+            PictureStore.get(server).release(canvasName);
+        }
     }
 
     public void tick() {
@@ -271,10 +289,7 @@ public class EntityCanvas extends HangingEntity implements IEntityAdditionalSpaw
     @Override
     public void readAdditional(CompoundNBT tagCompound) {
         this.hangingPosition = new BlockPos(tagCompound.getInt("TileX"), tagCompound.getInt("TileY"), tagCompound.getInt("TileZ"));
-        CompoundNBT canvasNBT = tagCompound;
-        if(tagCompound.contains("canvas")){
-            canvasNBT = tagCompound.getCompound("canvas");
-        }
+        final CompoundNBT canvasNBT = tagCompound.contains("canvas") ? tagCompound.getCompound("canvas") : tagCompound;
         this.canvasSigned = canvasNBT.contains("author") && canvasNBT.contains("title");
         this.canvasName = canvasNBT.getString("name");
         this.canvasVersion = canvasNBT.getInt("v");
@@ -285,10 +300,7 @@ public class EntityCanvas extends HangingEntity implements IEntityAdditionalSpaw
             this.canvasGeneration = canvasNBT.getInt("generation");
         }
 
-        Picture picture = PICTURES.get(canvasName);
-        if(picture == null || picture.version < canvasVersion){
-            PICTURES.put(canvasName, new Picture(canvasVersion, canvasNBT.getIntArray("pixels")));
-        }
+        migratePixels(canvasNBT);
 
         this.canvasType = CanvasType.fromByte(tagCompound.getByte("ctype"));
         if(tagCompound.contains("Facing") && !tagCompound.contains("RealFace")){
@@ -318,10 +330,15 @@ public class EntityCanvas extends HangingEntity implements IEntityAdditionalSpaw
         tagCompound.putByte("ctype", (byte)canvasType.ordinal());
         tagCompound.putByte("RealFace", (byte)this.facingDirection.getIndex());
         tagCompound.putByte("Rotation", (byte)this.getRotation());
+    }
 
-        Picture picture = PICTURES.get(canvasName);
-        if(picture != null){
-            tagCompound.putIntArray("pixels", picture.pixels);
+    /**
+     * Canvases saved by older versions carry their own pixels, which now belong in the world's picture store
+     */
+    private void migratePixels(CompoundNBT canvasNBT) {
+        MinecraftServer server = world.getServer();
+        if(!world.isRemote && server != null){
+            PictureStore.get(server).migrate(canvasNBT);
         }
     }
 
@@ -336,28 +353,21 @@ public class EntityCanvas extends HangingEntity implements IEntityAdditionalSpaw
 //        XercaPaint.LOGGER.debug("writeSpawnData Pos: " + this.hangingPosition.toString() + " posY: " + this.posY);
     }
 
-    private void requestPicture(){
-        if(!PICTURE_REQUESTS.contains(canvasName)){
-            PICTURE_REQUESTS.add(canvasName);
-            PictureRequestPacket pack = new PictureRequestPacket(canvasName);
-            XercaPaint.NETWORK_HANDLER.sendToServer(pack);
-        }
+    public void requestPicture(){
+        XercaPaint.proxy.requestPicture(canvasName, hangingPosition);
     }
 
     @Override
     public void readSpawnData(PacketBuffer buffer) {
         canvasName = buffer.readString();
         canvasVersion = buffer.readInt();
-
-        Picture picture = PICTURES.get(canvasName);
-        if(picture == null || picture.version < canvasVersion){
-            requestPicture();
-        }
         facingDirection = Direction.byIndex(buffer.readInt());
         canvasType = CanvasType.fromByte(buffer.readByte());
         hangingPosition = buffer.readBlockPos();
         setRotation(buffer.readByte());
 
+        picture = XercaPaint.proxy.getOrRequestPicture(canvasName, canvasVersion, hangingPosition);
+
         updateFacingWithBoundingBox(facingDirection);
 //        XercaPaint.LOGGER.debug("readSpawnData Pos: " + this.hangingPosition.toString() + " posY: " + this.posY);
     }
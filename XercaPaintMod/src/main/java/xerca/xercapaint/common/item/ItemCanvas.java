@@ -2,6 +2,7 @@ package xerca.xercapaint.common.item;
 
 import net.minecraft.client.renderer.tileentity.ItemStackTileEntityRenderer;
 import net.minecraft.client.util.ITooltipFlag;
+import net.minecraft.entity.Entity;
 import net.minecraft.entity.LivingEntity;
 import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.item.HangingEntityItem;
@@ -9,6 +10,7 @@ import net.minecraft.item.IItemPropertyGetter;
 import net.minecraft.item.ItemStack;
 import net.minecraft.item.ItemUseContext;
 import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.server.MinecraftServer;
 import net.minecraft.util.*;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.text.ITextComponent;
@@ -21,6 +23,8 @@ import net.minecraftforge.api.distmarker.OnlyIn;
 import org.lwjgl.system.NonnullDefault;
 import xerca.xercapaint.client.CanvasItemRenderer;
 import xerca.xercapaint.common.CanvasType;
+import xerca.xercapaint.common.PictureStore;
+import xerca.xercapaint.common.PixelCodec;
 import xerca.xercapaint.common.XercaPaint;
 import xerca.xercapaint.common.entity.Entities;
 import xerca.xercapaint.common.entity.EntityCanvas;
@@ -71,7 +75,7 @@ public class ItemCanvas extends HangingEntityItem {
             World world = context.getWorld();
 
             CompoundNBT tag = itemstack.getTag();
-            if(tag == null || !tag.contains("pixels") || !tag.contains("name")){
+            if(tag == null || !tag.contains("name")){
                 XercaPaint.proxy.showCanvasGui(playerentity);
                 return ActionResultType.SUCCESS;
             }
@@ -111,6 +115,21 @@ public class ItemCanvas extends HangingEntityItem {
         return ActionResultType.SUCCESS;
     }
 
+    @Override
+    public void inventoryTick(ItemStack stack, World worldIn, Entity entityIn, int itemSlot, boolean isSelected) {
+        // Canvases made by older versions carry their own pixels, move them into the world's picture store
+        CompoundNBT tag = stack.getTag();
+        MinecraftServer server = worldIn.getServer();
+        if(!worldIn.isRemote && server != null && tag != null && PixelCodec.hasPixels(tag)){
+            PictureStore.get(server).migrate(tag);
+        }
+        // A creative inventory can copy canvases without it being counted
+        if(!worldIn.isRemote && server != null && tag != null && tag.contains("name") &&
+                entityIn instanceof PlayerEntity && ((PlayerEntity) entityIn).abilities.isCreativeMode){
+            PictureStore.get(server).pin(tag.getString("name"));
+        }
+    }
+
     @Nonnull
     @Override
     public ITextComponent getDisplayName(@Nonnull ItemStack stack) {
@@ -0,0 +1,112 @@
+package xerca.xercapaint.common.packets;
+
+import net.minecraft.network.PacketBuffer;
+import xerca.xercapaint.common.CanvasType;
+import xerca.xercapaint.common.PixelCodec;
+
+/**
+ * The pixels of a rectangle of a canvas that changed between two versions of it.
+ * Sent by the painting player to the server, and by the server on to the players around them.
+ */
+public class CanvasDeltaPacket {
+    private String name;
+    private CanvasType canvasType;
+    private int baseVersion;
+    private int version;
+    private int x;
+    private int y;
+    private int width;
+    private int height;
+    private int[] pixels;
+    private boolean messageIsValid;
+
+    public CanvasDeltaPacket(String name, CanvasType canvasType, int baseVersion, int version, int x, int y, int width, int height, int[] pixels) {
+        this.name = name;
+        this.canvasType = canvasType;
+        this.baseVersion = baseVersion;
+        this.version = version;
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+        this.pixels = pixels;
+    }
+
+    public CanvasDeltaPacket() {
+        this.messageIsValid = false;
+    }
+
+    public static void encode(CanvasDeltaPacket pkt, PacketBuffer buf) {
+        buf.writeString(pkt.name);
+        buf.writeByte(pkt.canvasType.ordinal());
+        buf.writeInt(pkt.baseVersion);
+        buf.writeInt(pkt.version);
+        buf.writeByte(pkt.x);
+        buf.writeByte(pkt.y);
+        buf.writeByte(pkt.width);
+        buf.writeByte(pkt.height);
+        PixelCodec.writePixels(buf, pkt.pixels);
+    }
+
+    public static CanvasDeltaPacket decode(PacketBuffer buf) {
+        CanvasDeltaPacket result = new CanvasDeltaPacket();
+        try {
+            result.name = buf.readString(64);
+            result.canvasType = CanvasType.fromByte(buf.readByte());
+            result.baseVersion = buf.readInt();
+            result.version = buf.readInt();
+            result.x = buf.readUnsignedByte();
+            result.y = buf.readUnsignedByte();
+            result.width = buf.readUnsignedByte();
+            result.height = buf.readUnsignedByte();
+            if(result.canvasType == null || result.width == 0 || result.height == 0 ||
+                    result.x + result.width > CanvasType.getWidth(result.canvasType) ||
+                    result.y + result.height > CanvasType.getHeight(result.canvasType)){
+                throw new IllegalArgumentException("Changed area is out of the canvas");
+            }
+            result.pixels = PixelCodec.readPixels(buf, result.width*result.height);
+            if(result.pixels.length != result.width*result.height){
+                throw new IllegalArgumentException("Pixel count does not match the changed area");
+            }
+        } catch (IndexOutOfBoundsException | IllegalArgumentException ioe) {
+            System.err.println("Exception while reading CanvasDeltaPacket: " + ioe);
+            return null;
+        }
+        result.messageIsValid = true;
+        return result;
+    }
+
+    /**
+     * Writes the changed pixels into the full pixel array of the canvas
+     */
+    public void applyTo(int[] canvasPixels) {
+        int canvasWidth = CanvasType.getWidth(canvasType);
+        for(int i = 0; i < height; i++){
+            System.arraycopy(pixels, i*width, canvasPixels, (y + i)*canvasWidth + x, width);
+        }
+    }
+
+    public boolean coversCanvas() {
+        return x == 0 && y == 0 && width == CanvasType.getWidth(canvasType) && height == CanvasType.getHeight(canvasType);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public CanvasType getCanvasType() {
+        return canvasType;
+    }
+
+    public int getBaseVersion() {
+        return baseVersion;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public boolean isMessageValid() {
+        return messageIsValid;
+    }
+}
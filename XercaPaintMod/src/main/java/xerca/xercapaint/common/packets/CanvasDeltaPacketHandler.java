@@ -0,0 +1,99 @@
+package xerca.xercapaint.common.packets;
+
+import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.api.distmarker.OnlyIn;
+import net.minecraftforge.fml.network.NetworkEvent;
+import net.minecraftforge.fml.network.PacketDistributor;
+import xerca.xercapaint.client.PictureDiskCache;
+import xerca.xercapaint.common.CanvasType;
+import xerca.xercapaint.common.PictureStore;
+import xerca.xercapaint.common.XercaPaint;
+import xerca.xercapaint.common.entity.EntityCanvas;
+import xerca.xercapaint.common.item.ItemCanvas;
+import xerca.xercapaint.common.item.Items;
+
+import java.util.function.Supplier;
+
+public class CanvasDeltaPacketHandler {
+    public static void handle(final CanvasDeltaPacket message, Supplier<NetworkEvent.Context> ctx) {
+        if (!message.isMessageValid()) {
+            System.err.println("Packet was invalid");
+            return;
+        }
+
+        if (ctx.get().getDirection().getReceptionSide().isServer()) {
+            ServerPlayerEntity sendingPlayer = ctx.get().getSender();
+            if (sendingPlayer == null) {
+                System.err.println("EntityPlayerMP was null when CanvasDeltaPacket was received");
+                return;
+            }
+            ctx.get().enqueueWork(() -> processMessage(message, sendingPlayer));
+        }
+        else {
+            ctx.get().enqueueWork(() -> applyToCache(message));
+        }
+        ctx.get().setPacketHandled(true);
+    }
+
+    private static void processMessage(CanvasDeltaPacket msg, ServerPlayerEntity pl) {
+        ItemStack canvas = pl.getHeldItemMainhand();
+        if(canvas.getItem() == Items.ITEM_PALETTE){
+            canvas = pl.getHeldItemOffhand();
+        }
+        if (canvas.isEmpty() || !(canvas.getItem() instanceof ItemCanvas) || ((ItemCanvas) canvas.getItem()).getCanvasType() != msg.getCanvasType()) {
+            return;
+        }
+
+        // Only the unsigned canvas in the player's hand may be changed, and only from the version the server has
+        CompoundNBT comp = canvas.getOrCreateTag();
+        PictureStore store = PictureStore.get(pl.server);
+        PictureStore.Entry stored = store.get(msg.getName());
+        int[] pixels;
+        if (comp.contains("name")) {
+            if (!comp.getString("name").equals(msg.getName()) || comp.getInt("generation") > 0 || stored == null || stored.getVersion() != msg.getBaseVersion()) {
+                XercaPaint.LOGGER.warn("Rejected canvas change of " + msg.getName() + " from " + pl.getName().getString());
+                return;
+            }
+            pixels = store.getPixels(msg.getName());
+        }
+        else {
+            if (stored != null || !msg.coversCanvas()) {
+                XercaPaint.LOGGER.warn("Rejected new canvas " + msg.getName() + " from " + pl.getName().getString());
+                return;
+            }
+            pixels = new int[CanvasType.getWidth(msg.getCanvasType())*CanvasType.getHeight(msg.getCanvasType())];
+        }
+        if (pixels == null || msg.getVersion() <= msg.getBaseVersion()) {
+            return;
+        }
+
+        msg.applyTo(pixels);
+        store.put(msg.getName(), msg.getVersion(), pixels);
+        comp.putString("name", msg.getName());
+        comp.putInt("v", msg.getVersion());
+        comp.putInt("generation", 0);
+
+        XercaPaint.NETWORK_HANDLER.send(PacketDistributor.TRACKING_ENTITY.with(() -> pl), msg);
+        XercaPaint.LOGGER.debug("Handling canvas change: Name: " + msg.getName() + " V: " + msg.getVersion());
+    }
+
+    /**
+     * Applies the change to the cached picture of the version it was made from.
+     * @return false if the cache doesn't have that version, in which case the picture is left to be requested
+     */
+    @OnlyIn(Dist.CLIENT)
+    public static boolean applyToCache(CanvasDeltaPacket msg) {
+        EntityCanvas.Picture picture = EntityCanvas.PICTURES.get(msg.getName());
+        int area = CanvasType.getWidth(msg.getCanvasType())*CanvasType.getHeight(msg.getCanvasType());
+        if (picture == null || picture.version != msg.getBaseVersion() || picture.pixels.length != area) {
+            return false;
+        }
+        msg.applyTo(picture.pixels);
+        picture.version = msg.getVersion();
+        PictureDiskCache.save(msg.getName(), picture.version, picture.pixels.clone());
+        return true;
+    }
+}
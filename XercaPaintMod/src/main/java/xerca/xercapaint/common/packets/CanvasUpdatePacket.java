@@ -8,23 +8,18 @@ import java.util.Arrays;
 
 public class CanvasUpdatePacket {
     private PaletteUtil.CustomColor[] paletteColors;
-    private int[] pixels;
     private boolean signed;
     private String title;
     private CanvasType canvasType;
     private String name; //name must be unique
-    private int version;
     private boolean messageIsValid;
 
-    public CanvasUpdatePacket(int[] pixels, boolean signed, String title, String name, int version, PaletteUtil.CustomColor[] paletteColors, CanvasType canvasType) {
+    public CanvasUpdatePacket(boolean signed, String title, String name, PaletteUtil.CustomColor[] paletteColors, CanvasType canvasType) {
         this.paletteColors = Arrays.copyOfRange(paletteColors, 0, 12);
         this.signed = signed;
         this.title = title;
         this.name = name;
-        this.version = version;
         this.canvasType = canvasType;
-        int area = CanvasType.getHeight(canvasType)*CanvasType.getWidth(canvasType);
-        this.pixels = Arrays.copyOfRange(pixels, 0, area);
     }
 
     public CanvasUpdatePacket() {
@@ -36,11 +31,9 @@ public class CanvasUpdatePacket {
             color.writeToBuffer(buf);
         }
         buf.writeByte(pkt.canvasType.ordinal());
-        buf.writeInt(pkt.version);
         buf.writeString(pkt.name);
         buf.writeString(pkt.title);
         buf.writeBoolean(pkt.signed);
-        buf.writeVarIntArray(pkt.pixels);
     }
 
     public static CanvasUpdatePacket decode(PacketBuffer buf) {
@@ -51,12 +44,9 @@ public class CanvasUpdatePacket {
                 result.paletteColors[i] = new PaletteUtil.CustomColor(buf);
             }
             result.canvasType = CanvasType.fromByte(buf.readByte());
-            result.version = buf.readInt();
             result.name = buf.readString(64);
             result.title = buf.readString(32);
             result.signed = buf.readBoolean();
-            int area = CanvasType.getHeight(result.canvasType)*CanvasType.getWidth(result.canvasType);
-            result.pixels = buf.readVarIntArray(area);
         } catch (IndexOutOfBoundsException ioe) {
             System.err.println("Exception while reading CanvasUpdatePacket: " + ioe);
             return null;
@@ -65,10 +55,6 @@ public class CanvasUpdatePacket {
         return result;
     }
 
-    public int[] getPixels() {
-        return pixels;
-    }
-
     public PaletteUtil.CustomColor[] getPaletteColors() {
         return paletteColors;
     }
@@ -89,10 +75,6 @@ public class CanvasUpdatePacket {
         return messageIsValid;
     }
 
-    public int getVersion() {
-        return version;
-    }
-
     public CanvasType getCanvasType() {
         return canvasType;
     }
@@ -38,13 +38,9 @@ public class CanvasUpdatePacketHandler {
         }
 
         if (!canvas.isEmpty() && canvas.getItem() instanceof ItemCanvas) {
-            CompoundNBT comp = canvas.getOrCreateTag();
-
-            comp.putIntArray("pixels", msg.getPixels());
-            comp.putString("name", msg.getName());
-            comp.putInt("v", msg.getVersion());
-            comp.putInt("generation", 0);
-            if (msg.getSigned()) {
+            // The pixels already arrived as CanvasDeltaPackets, this only signs the canvas
+            CompoundNBT comp = canvas.getTag();
+            if (msg.getSigned() && comp != null && comp.getString("name").equals(msg.getName()) && comp.getInt("generation") == 0) {
                 comp.putString("author", pl.getName().getString());
                 comp.putString("title", msg.getTitle().trim());
                 comp.putInt("generation", 1);
@@ -55,7 +51,7 @@ public class CanvasUpdatePacketHandler {
                 writeCustomColorArrayToNBT(paletteComp, msg.getPaletteColors());
             }
 
-            XercaPaint.LOGGER.debug("Handling canvas update: Name: " + msg.getName() + " V: " + msg.getVersion());
+            XercaPaint.LOGGER.debug("Handling canvas update: Name: " + msg.getName());
         }
     }
 }
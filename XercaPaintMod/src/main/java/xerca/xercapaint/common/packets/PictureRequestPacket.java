@@ -1,13 +1,23 @@
 package xerca.xercapaint.common.packets;
 
+import com.google.common.collect.Lists;
 import net.minecraft.network.PacketBuffer;
+import net.minecraft.util.math.BlockPos;
+
+import java.util.List;
 
 public class PictureRequestPacket {
-    private String name;
+    public static final int MAX_NAMES = 64;
+    private List<String> names;
+    private List<BlockPos> positions;
     private boolean messageIsValid;
 
-    public PictureRequestPacket(String name) {
-        this.name = name;
+    /**
+     * @param positions where each picture is needed, so the server can send the nearest ones first
+     */
+    public PictureRequestPacket(List<String> names, List<BlockPos> positions) {
+        this.names = names;
+        this.positions = positions;
     }
 
     public PictureRequestPacket() {
@@ -15,13 +25,27 @@ public class PictureRequestPacket {
     }
 
     public static void encode(PictureRequestPacket pkt, PacketBuffer buf) {
-        buf.writeString(pkt.name);
+        buf.writeVarInt(pkt.names.size());
+        for(int i = 0; i < pkt.names.size(); i++){
+            buf.writeString(pkt.names.get(i));
+            buf.writeBlockPos(pkt.positions.get(i));
+        }
     }
 
     public static PictureRequestPacket decode(PacketBuffer buf) {
         PictureRequestPacket result = new PictureRequestPacket();
         try {
-            result.name = buf.readString(64);
+            int count = buf.readVarInt();
+            if(count < 0 || count > MAX_NAMES){
+                System.err.println("Invalid name count in PictureRequestPacket: " + count);
+                return null;
+            }
+            result.names = Lists.newArrayListWithCapacity(count);
+            result.positions = Lists.newArrayListWithCapacity(count);
+            for(int i = 0; i < count; i++){
+                result.names.add(buf.readString(64));
+                result.positions.add(buf.readBlockPos());
+            }
         } catch (IndexOutOfBoundsException ioe) {
             System.err.println("Exception while reading PictureRequestPacket: " + ioe);
             return null;
@@ -30,8 +54,12 @@ public class PictureRequestPacket {
         return result;
     }
 
-    public String getName() {
-        return name;
+    public List<String> getNames() {
+        return names;
+    }
+
+    public List<BlockPos> getPositions() {
+        return positions;
     }
 
     public boolean isMessageValid() {
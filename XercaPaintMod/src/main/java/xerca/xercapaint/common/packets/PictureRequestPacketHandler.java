@@ -2,9 +2,7 @@ package xerca.xercapaint.common.packets;
 
 import net.minecraft.entity.player.ServerPlayerEntity;
 import net.minecraftforge.fml.network.NetworkEvent;
-import net.minecraftforge.fml.network.PacketDistributor;
-import xerca.xercapaint.common.XercaPaint;
-import xerca.xercapaint.common.entity.EntityCanvas;
+import xerca.xercapaint.common.PictureStreamer;
 
 import java.util.function.Supplier;
 
@@ -16,7 +14,7 @@ public class PictureRequestPacketHandler {
         }
         ServerPlayerEntity sendingPlayer = ctx.get().getSender();
         if (sendingPlayer == null) {
-            System.err.println("EntityPlayerMP was null when CanvasUpdatePacket was received");
+            System.err.println("EntityPlayerMP was null when PictureRequestPacket was received");
             return;
         }
 
@@ -25,11 +23,6 @@ public class PictureRequestPacketHandler {
     }
 
     private static void processMessage(PictureRequestPacket msg, ServerPlayerEntity pl) {
-        String name = msg.getName();
-        EntityCanvas.Picture picture = EntityCanvas.PICTURES.get(name);
-        if(picture != null){
-            PictureSendPacket pack = new PictureSendPacket(name, picture.version, picture.pixels);
-            XercaPaint.NETWORK_HANDLER.send(PacketDistributor.PLAYER.with(() -> pl), pack);
-        }
+        PictureStreamer.enqueue(pl, msg.getNames(), msg.getPositions());
     }
 }
@@ -1,38 +1,58 @@
 package xerca.xercapaint.common.packets;
 
 import net.minecraft.network.PacketBuffer;
-
-import java.util.Arrays;
+import xerca.xercapaint.common.PixelCodec;
 
 public class PictureSendPacket {
     private String name;
     private int version;
     private int[] pixels;
+    private byte[] encodedPixels;
+    // False when the server doesn't have the picture, so the client can stop waiting for it
+    private boolean found = true;
     private boolean messageIsValid;
 
     public PictureSendPacket(String name, int version, int[] pixels) {
         this.name = name;
         this.version = version;
-        this.pixels = Arrays.copyOfRange(pixels, 0, pixels.length);
+        this.encodedPixels = PixelCodec.encode(pixels);
+    }
+
+    public PictureSendPacket(String name, int version, byte[] encodedPixels) {
+        this.name = name;
+        this.version = version;
+        this.encodedPixels = encodedPixels;
     }
 
     public PictureSendPacket() {
         this.messageIsValid = false;
     }
 
+    public static PictureSendPacket notFound(String name) {
+        PictureSendPacket result = new PictureSendPacket(name, 0, new byte[0]);
+        result.found = false;
+        return result;
+    }
+
     public static void encode(PictureSendPacket pkt, PacketBuffer buf) {
         buf.writeString(pkt.name);
-        buf.writeInt(pkt.version);
-        buf.writeVarIntArray(pkt.pixels);
+        buf.writeBoolean(pkt.found);
+        if(pkt.found){
+            buf.writeInt(pkt.version);
+            buf.writeByteArray(pkt.encodedPixels);
+        }
     }
 
     public static PictureSendPacket decode(PacketBuffer buf) {
         PictureSendPacket result = new PictureSendPacket();
         try {
             result.name = buf.readString(64);
-            result.version = buf.readInt();
-            result.pixels = buf.readVarIntArray(1024);
-        } catch (IndexOutOfBoundsException ioe) {
+            result.found = buf.readBoolean();
+            if(result.found){
+                result.version = buf.readInt();
+                result.pixels = PixelCodec.readPixels(buf, 1024);
+            }
+        } catch (IndexOutOfBoundsException | IllegalArgumentException ioe) {
             System.err.println("Exception while reading PictureSendPacket: " + ioe);
             return null;
         }
@@ -40,6 +60,13 @@ public class PictureSendPacket {
         return result;
     }
 
+    /**
+     * Approximate number of bytes this packet takes on the wire
+     */
+    public int getSize() {
+        return name.length() + 8 + encodedPixels.length;
+    }
+
     public String getName() {
         return name;
     }
@@ -52,6 +79,10 @@ public class PictureSendPacket {
         return pixels;
     }
 
+    public boolean isFound() {
+        return found;
+    }
+
     public boolean isMessageValid() {
         return messageIsValid;
     }
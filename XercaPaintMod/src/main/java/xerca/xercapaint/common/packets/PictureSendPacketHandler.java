@@ -3,7 +3,8 @@ package xerca.xercapaint.common.packets;
 import net.minecraftforge.api.distmarker.Dist;
 import net.minecraftforge.api.distmarker.OnlyIn;
 import net.minecraftforge.fml.network.NetworkEvent;
-import xerca.xercapaint.client.RenderEntityCanvas;
+import xerca.xercapaint.client.PictureDiskCache;
+import xerca.xercapaint.client.PictureRequestBatcher;
 import xerca.xercapaint.common.entity.EntityCanvas;
 
 import java.util.function.Supplier;
@@ -21,9 +22,12 @@ public class PictureSendPacketHandler {
 
     @OnlyIn(Dist.CLIENT)
     private static void processMessage(PictureSendPacket msg) {
-        EntityCanvas.PICTURES.put(msg.getName(), new EntityCanvas.Picture(msg.getVersion(), msg.getPixels()));
-        if(!EntityCanvas.PICTURE_REQUESTS.contains(msg.getName())) {
-            EntityCanvas.PICTURE_REQUESTS.remove(msg.getName());
+        if(!msg.isFound()){
+            PictureRequestBatcher.onMissing(msg.getName());
+            return;
         }
+        EntityCanvas.PICTURES.put(msg.getName(), new EntityCanvas.Picture(msg.getVersion(), msg.getPixels()));
+        PictureDiskCache.save(msg.getName(), msg.getVersion(), msg.getPixels());
+        EntityCanvas.PICTURE_REQUESTS.remove(msg.getName());
     }
 }
@@ -2,7 +2,11 @@ package xerca.xercapaint.server;
 
 import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.util.math.BlockPos;
 import xerca.xercapaint.common.Proxy;
+import xerca.xercapaint.common.entity.EntityCanvas;
+
+import javax.annotation.Nullable;
 
 public class ServerProxy extends Proxy {
 
@@ -15,4 +19,15 @@ public class ServerProxy extends Proxy {
     public void showCanvasGui(PlayerEntity player) {
 
     }
+
+    @Override
+    public void requestPicture(String name, BlockPos pos) {
+
+    }
+
+    @Nullable
+    @Override
+    public EntityCanvas.Picture getOrRequestPicture(String name, int version, BlockPos pos) {
+        return null;
+    }
 }